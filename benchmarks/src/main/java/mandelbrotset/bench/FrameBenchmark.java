@@ -0,0 +1,85 @@
+package mandelbrotset.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import mandelbrotset.render.IterationBuffer;
+import mandelbrotset.render.Palette;
+import mandelbrotset.render.RenderEngine;
+import mandelbrotset.render.RenderParams;
+
+/**
+ * Full frames through the RenderEngine, on all cores, at the SizeControl
+ * presets. Compare engines with for example
+ * {@code -p kernel=SCALAR,OPTIMIZED,VECTOR -p algorithm=BRUTE_FORCE,MARIANI_SILVER}
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = Views.VECTOR_MODULE)
+public class FrameBenchmark {
+
+  @Param({ "400", "640", "800", "1080", "1440", "1900" })
+  public int size;
+
+  @Param({ "25", "250", "1000" })
+  public int iterations;
+
+  @Param({ "DEFAULT", "DEEP_ZOOM", "PERTURBATION", "MOSTLY_INTERIOR", "JULIA", "JULIA_INTERIOR" })
+  public Views view;
+
+  @Param({ "OPTIMIZED" })
+  public RenderEngine.Kernel kernel;
+
+  @Param({ "BRUTE_FORCE" })
+  public RenderEngine.Algorithm algorithm;
+
+  private final RenderEngine engine = new RenderEngine();
+  private RenderParams params;
+  private Palette palette;
+  private int[] counts;
+  private int[] argb;
+  private IterationBuffer stored;
+
+  @Setup
+  public void setup() {
+    engine.setKernel(kernel);
+    engine.setAlgorithm(algorithm);
+    params = view.params(size, iterations);
+    palette = Views.palette(iterations);
+    counts = new int[size * size];
+    argb = new int[size * size];
+
+    stored = new IterationBuffer();
+    int[] storedCounts = new int[size * size];
+    engine.render(params, palette, storedCounts, new int[size * size]);
+    stored.store(params, storedCounts);
+  }
+
+  /** Iterate and color a whole frame */
+  @Benchmark
+  public int[] render() {
+    engine.render(params, palette, counts, argb);
+    return argb;
+  }
+
+  /** Recolor a whole frame from stored counts, what a color change costs */
+  @Benchmark
+  public int[] recolor() {
+    stored.recolor(palette, argb);
+    return argb;
+  }
+}
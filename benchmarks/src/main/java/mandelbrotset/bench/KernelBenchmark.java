@@ -0,0 +1,143 @@
+package mandelbrotset.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import mandelbrotset.render.Complex;
+import mandelbrotset.render.FractalKernel;
+import mandelbrotset.render.KernelStats;
+import mandelbrotset.render.Palette;
+import mandelbrotset.render.PerturbationKernel;
+import mandelbrotset.render.ReferenceOrbit;
+import mandelbrotset.render.RenderEngine;
+import mandelbrotset.render.RenderParams;
+
+/**
+ * Single threaded cost of the per-pixel building blocks, averaged over a
+ * SAMPLE x SAMPLE grid of pixels spread across the view.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = Views.VECTOR_MODULE)
+public class KernelBenchmark {
+
+  private static final int SAMPLE = 32;
+  private static final int PIXELS = SAMPLE * SAMPLE;
+
+  @Param({ "DEFAULT", "DEEP_ZOOM", "PERTURBATION", "MOSTLY_INTERIOR", "JULIA", "JULIA_INTERIOR" })
+  public Views view;
+
+  @Param({ "25", "250", "1000" })
+  public int iterations;
+
+  private RenderParams params;
+  private Palette palette;
+  private PerturbationKernel deep;
+  private int[] counts;
+  private int step;
+
+  @Setup
+  public void setup() {
+    params = view.params(800, iterations);
+    palette = Views.palette(iterations);
+    step = params.getSize() / SAMPLE;
+    ReferenceOrbit reference = PerturbationKernel.referenceFor(params, null);
+    deep = new PerturbationKernel(params, reference, PerturbationKernel.criticalFor(params, reference, null));
+
+    // Real counts of the sample, so pickColor sees a realistic mix
+    counts = new int[PIXELS];
+    KernelStats stats = new KernelStats();
+    for (int i = 0; i < PIXELS; i++)
+      counts[i] = RenderEngine.precisionFor(params) != RenderEngine.Precision.DOUBLE
+          ? deep.iterate((i % SAMPLE) * step, (i / SAMPLE) * step, stats)
+          : FractalKernel.iterate(params, (i % SAMPLE) * step, (i / SAMPLE) * step);
+  }
+
+  /** The original escape time loop, per pixel */
+  @Benchmark
+  @OperationsPerInvocation(PIXELS)
+  public void checkConvergence(Blackhole bh) {
+    Complex k = params.getJuliaConstant();
+    int maxIter = params.getMaxIter();
+    for (int i = 0; i < PIXELS; i++) {
+      double re = params.toReal((i % SAMPLE) * step);
+      double im = params.toIm((i / SAMPLE) * step);
+      bh.consume(params.isJulia()
+          ? FractalKernel.checkConvergence(re, im, k.getReal(), k.getIm(), maxIter)
+          : FractalKernel.checkConvergence(0.0, 0.0, re, im, maxIter));
+    }
+  }
+
+  /** Cardioid, bulb and cycle checks (Mandelbrot), plain loop (Julia), per pixel */
+  @Benchmark
+  @OperationsPerInvocation(PIXELS)
+  public void checkConvergenceOptimized(Blackhole bh) {
+    KernelStats stats = new KernelStats();
+    for (int i = 0; i < PIXELS; i++)
+      bh.consume(FractalKernel.iterateFast(params, (i % SAMPLE) * step, (i / SAMPLE) * step, stats));
+  }
+
+  /** Deep zoom kernel against a precomputed reference orbit, per pixel */
+  @Benchmark
+  @OperationsPerInvocation(PIXELS)
+  public void perturbation(Blackhole bh) {
+    KernelStats stats = new KernelStats();
+    for (int i = 0; i < PIXELS; i++)
+      bh.consume(deep.iterate((i % SAMPLE) * step, (i / SAMPLE) * step, stats));
+  }
+
+  /** Reference orbit in BigDecimal, once per deep zoom frame */
+  @Benchmark
+  public ReferenceOrbit referenceOrbit() {
+    return PerturbationKernel.referenceFor(params, null);
+  }
+
+  /** Pixel to complex plane conversion, per pixel */
+  @Benchmark
+  @OperationsPerInvocation(PIXELS)
+  public void convertSpace(Blackhole bh) {
+    for (int i = 0; i < PIXELS; i++) {
+      bh.consume(params.toReal(i % SAMPLE));
+      bh.consume(params.toIm(i / SAMPLE));
+    }
+  }
+
+  /** Palette lookup table, per pixel */
+  @Benchmark
+  @OperationsPerInvocation(PIXELS)
+  public void pickColor(Blackhole bh) {
+    for (int i = 0; i < PIXELS; i++)
+      bh.consume(palette.pickColor(counts[i]));
+  }
+
+  /** HSB to ARGB math the lookup table replaces, per pixel */
+  @Benchmark
+  @OperationsPerInvocation(PIXELS)
+  public void pickColorUncached(Blackhole bh) {
+    double max = iterations;
+    for (int i = 0; i < PIXELS; i++)
+      bh.consume(Palette.hsbToArgb(240 * (counts[i] / max), 1.0, counts[i] < max ? 1.0 : 0.0));
+  }
+
+  /** Building the lookup table, once per color or iteration change */
+  @Benchmark
+  public Palette buildPalette() {
+    return Views.palette(iterations);
+  }
+}
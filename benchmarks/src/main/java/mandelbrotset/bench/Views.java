@@ -0,0 +1,49 @@
+package mandelbrotset.bench;
+
+import mandelbrotset.render.Palette;
+import mandelbrotset.render.RenderParams;
+
+/**
+ * Fixed, reproducible views to benchmark. Numbers from different runs,
+ * machines or engines are only comparable if they render the same frames.
+ */
+public enum Views {
+  /** The view the viewer starts with */
+  DEFAULT(false, -0.6, 0.0, 1.3, 0.0),
+  /** Seahorse valley, about where plain doubles give out and PerturbationKernel takes over */
+  DEEP_ZOOM(false, -0.743643887037151, 0.131825904205330, 1e-11, 0.0),
+  /** Around c = i, far beyond double precision, all PerturbationKernel */
+  PERTURBATION(false, 0.0, 1.0, 1e-30, 0.0),
+  /** Mostly the main cardioid and period-2 bulb, the worst case without shortcuts */
+  MOSTLY_INTERIOR(false, -0.5, 0.0, 0.5, 0.0),
+  /** The default Julia set, at the viewer's default angle */
+  JULIA(true, 0.0, 0.0, 1.7, Math.PI),
+  /** A Julia set with lots of interior (the "rabbit") */
+  JULIA_INTERIOR(true, 0.0, 0.0, 1.5, 2.1);
+
+  /** JVM options for every forked benchmark JVM, so the VECTOR kernel is really SIMD */
+  public static final String VECTOR_MODULE = "--add-modules=jdk.incubator.vector";
+
+  private final boolean julia;
+  private final double centerX;
+  private final double centerY;
+  private final double radius;
+  private final double juliaAngle;
+
+  Views(boolean julia, double centerX, double centerY, double radius, double juliaAngle) {
+    this.julia = julia;
+    this.centerX = centerX;
+    this.centerY = centerY;
+    this.radius = radius;
+    this.juliaAngle = juliaAngle;
+  }
+
+  public RenderParams params(int size, int maxIter) {
+    return new RenderParams(size, centerX, centerY, radius, maxIter, julia, juliaAngle);
+  }
+
+  /** The viewer's default red to blue gradient */
+  public static Palette palette(int maxIter) {
+    return new Palette(Palette.rgbToHsb(0xff0000), Palette.rgbToHsb(0x0000ff), false, maxIter);
+  }
+}
@@ -0,0 +1,416 @@
+package mandelbrotset;
+
+import java.io.File;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import mandelbrotset.render.AnimatedGif;
+import mandelbrotset.render.ExpMap;
+import mandelbrotset.render.FrameSequence;
+import mandelbrotset.render.ImageFiles;
+import mandelbrotset.render.IterationBuffer;
+import mandelbrotset.render.Palette;
+import mandelbrotset.render.Poster;
+import mandelbrotset.render.RenderEngine;
+import mandelbrotset.render.RenderParams;
+import mandelbrotset.render.SequenceRenderer;
+import mandelbrotset.render.TileRenderer;
+import mandelbrotset.render.ViewState;
+
+/**
+ * Command line renderer for servers without a display.
+ * <p>
+ * Renders straight to PNG files using only the mandelbrotset.render core, so
+ * the JavaFX toolkit is never loaded. Run with
+ * {@code java -cp MandelbrotSet.jar mandelbrotset.BatchRenderer [options]}
+ * <p>
+ * One frame is rendered per invocation, or one per line of a --batch file.
+ * With --frames, each job is an animation instead (see FrameSequence).
+ * Images bigger than POSTER_SIZE are streamed to the file in bands (see
+ * Poster), so any size fits in memory.
+ */
+public class BatchRenderer {
+
+  /** Sizes above this are rendered in bands */
+  public static final int POSTER_SIZE = 4096;
+
+  private static final String USAGE = String.join("\n",
+      "Usage: BatchRenderer [options]",
+      "  --center X,Y        View center (default -0.6,0.0, or 0.0,0.0 for Julia)",
+      "  --radius R          Half width of the square view (default 1.3, or 1.7 for Julia)",
+      "  --view X,Y,R        Center and radius together, as copied from the viewer",
+      "                      (coordinates take any number of digits, for deep zooms)",
+      "  --iterations N      Iteration limit (default 25)",
+      "  --size N            Image width and height in pixels (default 800). Above " + POSTER_SIZE
+          + " the image is",
+      "                      streamed to the file in bands, so posters of 50000 and more fit in memory",
+      "  --julia ANGLE       Render the Julia set at this angle instead of the Mandelbrot set",
+      "  --mode MODE         normal or psychedelic (default normal)",
+      "  --colors C1,C2      Hex colors 1 and 2 (default FF0000,0000FF, or 99B3FF,FFFFFF for psychedelic)",
+      "  --out FILE          Output PNG (default mandelbrot.png)",
+      "  --tracing on|off    Mariani-Silver boundary tracing, faster for views with lots of set (default off)",
+      "  --kernel NAME       optimized, vector (SIMD, needs --add-modules jdk.incubator.vector)",
+      "                      or scalar escape time loop (default optimized)",
+      "  --antialias         Supersample pixels on sharp edges (16 samples each) for smoother images",
+      "  --stats             Print kernel counters (iterations, early bailouts) and per core busy time for each frame",
+      "  --frames N          Render an animation of N frames, numbered FILE_0000.png and up",
+      "  --angle-to ANGLE    Julia angle of the last frame, sweeping from the --julia angle",
+      "  --radius-to R       Radius of the last frame, zooming in or out at a steady rate",
+      "  --gif FILE          Write the animation as a looping GIF, and no PNGs unless --out is given",
+      "  --fps N             Frame rate of the GIF (default 25)",
+      "  --expmap            Resample a --radius-to zoom from one exponential map, iterating each point",
+      "                      about once instead of once per frame. Much faster for long zooms, slightly softer",
+      "  --batch FILE        Render one frame per line of FILE, each line holding the options above");
+
+  /** One frame to render, parsed from the command line */
+  private static class Job {
+    RenderParams params;
+    Palette palette;
+    RenderEngine.Algorithm algorithm;
+    RenderEngine.Kernel kernel;
+    boolean antialias;
+    boolean stats;
+    File out;
+    // Animations only
+    FrameSequence sequence;
+    boolean pngs;
+    File gif;
+    double fps;
+    boolean expMap;
+  }
+
+  public static void main(String[] args) {
+    // Make sure nothing tries to open a display
+    System.setProperty("java.awt.headless", "true");
+
+    List<Job> jobs = new ArrayList<>();
+    try {
+      if (args.length == 2 && args[0].equals("--batch")) {
+        for (String line : Files.readAllLines(new File(args[1]).toPath(), StandardCharsets.UTF_8)) {
+          line = line.trim();
+          if (!line.isEmpty() && !line.startsWith("#"))
+            jobs.add(parse(line.split("\\s+")));
+        }
+      } else {
+        jobs.add(parse(args));
+      }
+    } catch (IllegalArgumentException | IOException e) {
+      System.err.println(e.getMessage());
+      System.err.println(USAGE);
+      System.exit(1);
+    }
+
+    for (Job job : jobs) {
+      if (job.kernel == RenderEngine.Kernel.VECTOR && !RenderEngine.isVectorAvailable()) {
+        System.err.println("jdk.incubator.vector module not found, using the optimized scalar kernel."
+            + " Run with --add-modules jdk.incubator.vector to enable it");
+        break;
+      }
+    }
+
+    RenderEngine engine = new RenderEngine();
+    // Frame latency and throughput for jconsole and the like
+    engine.getMetrics().register("batch");
+    // Reused for every frame of the same size
+    int[] argb = new int[0];
+    // Consecutive jobs of the same view that only differ in colors are
+    // recolored from the previous job's counts
+    IterationBuffer last = new IterationBuffer();
+    for (Job job : jobs) {
+      long start = System.nanoTime();
+      if (job.sequence != null) {
+        engine.setAlgorithm(job.algorithm);
+        engine.setKernel(job.kernel);
+        engine.setAntialias(job.antialias);
+        last.clear();
+        renderSequence(engine, job);
+        System.out.printf("%d frames (%dx%d) in %d ms%n", job.sequence.getFrames(), job.sequence.getSize(),
+            job.sequence.getSize(), (System.nanoTime() - start) / 1_000_000);
+        continue;
+      }
+      int size = job.params.getSize();
+      if (size > POSTER_SIZE) {
+        engine.setAlgorithm(job.algorithm);
+        engine.setKernel(job.kernel);
+        engine.setAntialias(job.antialias);
+        engine.getStats().reset();
+        engine.getLoad().reset();
+        renderPoster(engine, job);
+        System.out.printf("%s (%dx%d) in %d ms%n", job.out.getPath(), size, size,
+            (System.nanoTime() - start) / 1_000_000);
+        if (job.stats) {
+          System.out.println("  " + engine.getStats());
+          System.out.println("  " + engine.getLoad());
+        }
+        continue;
+      }
+      if (argb.length != size * size)
+        argb = new int[size * size];
+
+      if (job.algorithm != engine.getAlgorithm()) {
+        engine.setAlgorithm(job.algorithm);
+        last.clear();
+      }
+      if (job.kernel != engine.getKernel())
+        engine.setKernel(job.kernel);
+      engine.setAntialias(job.antialias);
+      engine.getStats().reset();
+      engine.getLoad().reset();
+
+      if (last.matches(job.params)) {
+        last.recolor(job.palette, argb);
+        if (job.antialias)
+          engine.antialias(job.params, job.palette, last.getCounts(), argb, TileRenderer.NO_MONITOR);
+      } else {
+        int[] counts = last.clear();
+        if (counts == null || counts.length != size * size)
+          counts = new int[size * size];
+        engine.render(job.params, job.palette, counts, argb);
+        last.store(job.params, counts);
+      }
+      try {
+        ImageFiles.writePng(argb, size, size, job.out);
+      } catch (IOException e) {
+        System.err.println("Could not write " + job.out + ": " + e.getMessage());
+        System.exit(2);
+      }
+      System.out.printf("%s (%dx%d) in %d ms%n", job.out.getPath(), size, size,
+          (System.nanoTime() - start) / 1_000_000);
+      if (job.stats) {
+        System.out.println("  " + engine.getStats());
+        System.out.println("  " + engine.getLoad());
+      }
+    }
+  }
+
+  /** Render an animation job to numbered PNGs and/or a GIF */
+  private static void renderSequence(RenderEngine engine, Job job) {
+    String name = job.out.getPath();
+    String base = name.toLowerCase().endsWith(".png") ? name.substring(0, name.length() - 4) : name;
+    try (AnimatedGif gif = job.gif == null ? null : new AnimatedGif(job.gif, job.fps)) {
+      SequenceRenderer.FrameSink sink = (i, argb, size) -> {
+        if (job.pngs)
+          ImageFiles.writePng(argb, size, size, new File(String.format("%s_%04d.png", base, i)));
+        if (gif != null)
+          gif.frame(i, argb, size);
+      };
+      SequenceRenderer.Progress progress = (done, total) -> System.out.printf("\rFrame %d of %d", done, total);
+      SequenceRenderer renderer = new SequenceRenderer(engine);
+      if (job.expMap) {
+        ExpMap map = renderer.renderExpMap(job.sequence, job.palette, sink, progress);
+        System.out.println();
+        if (job.stats)
+          System.out.printf("  %d x %d strip, %s%n", map.getWidth(), map.getRows(), map.getStats());
+      } else {
+        renderer.render(job.sequence, job.palette, sink, progress);
+        System.out.println();
+      }
+    } catch (IOException e) {
+      System.out.println();
+      System.err.println("Could not write the animation: " + e.getMessage());
+      System.exit(2);
+    }
+  }
+
+  /** Render a big image band by band, straight to its file */
+  private static void renderPoster(RenderEngine engine, Job job) {
+    try {
+      Poster.render(engine, job.params, job.palette, job.out, new TileRenderer.Monitor() {
+        private int percent = -1;
+
+        @Override
+        public boolean isCancelled() {
+          return false;
+        }
+
+        @Override
+        public synchronized void tileDone(int done, int total) {
+          int p = (int) (100L * done / total);
+          if (p != percent) {
+            percent = p;
+            System.out.printf("\r%d%%", p);
+          }
+        }
+      });
+      System.out.println();
+    } catch (IOException e) {
+      System.out.println();
+      System.err.println("Could not write " + job.out + ": " + e.getMessage());
+      System.exit(2);
+    }
+  }
+
+  /** Parse the options for one frame */
+  private static Job parse(String[] args) {
+    boolean julia = false;
+    double angle = MainViewer.JULIA_ANGLE;
+    BigDecimal x = null, y = null, radius = null;
+    int iterations = MainViewer.ITERATIONS;
+    int size = MainViewer.SIZE;
+    boolean psychedelic = false;
+    String colors = null;
+    String out = "mandelbrot.png";
+    RenderEngine.Algorithm algorithm = RenderEngine.Algorithm.BRUTE_FORCE;
+    RenderEngine.Kernel kernel = RenderEngine.Kernel.OPTIMIZED;
+    boolean stats = false;
+    boolean antialias = false;
+    int frames = 0;
+    Double angleTo = null;
+    BigDecimal radiusTo = null;
+    String gif = null;
+    double fps = 25;
+    boolean outGiven = false;
+    boolean expMap = false;
+
+    for (int i = 0; i < args.length; i++) {
+      String opt = args[i];
+      // Options without a value
+      if (opt.equals("--stats")) {
+        stats = true;
+        continue;
+      }
+      if (opt.equals("--antialias")) {
+        antialias = true;
+        continue;
+      }
+      if (opt.equals("--expmap")) {
+        expMap = true;
+        continue;
+      }
+      if (i + 1 >= args.length)
+        throw new IllegalArgumentException("Missing value for " + opt);
+      String value = args[++i];
+      try {
+        switch (opt) {
+          case "--center":
+            String[] xy = value.split(",");
+            if (xy.length != 2)
+              throw new IllegalArgumentException("Center must be X,Y: " + value);
+            x = new BigDecimal(xy[0]);
+            y = new BigDecimal(xy[1]);
+            break;
+          case "--radius":
+            radius = new BigDecimal(value);
+            break;
+          case "--view":
+            ViewState view = ViewState.parse(value);
+            x = view.getCenterX();
+            y = view.getCenterY();
+            radius = view.getRadius();
+            break;
+          case "--iterations":
+            iterations = Integer.parseInt(value);
+            break;
+          case "--size":
+            size = Integer.parseInt(value);
+            break;
+          case "--julia":
+            julia = true;
+            angle = Double.parseDouble(value);
+            break;
+          case "--mode":
+            if (!value.equals("normal") && !value.equals("psychedelic"))
+              throw new IllegalArgumentException("Unknown color mode: " + value);
+            psychedelic = value.equals("psychedelic");
+            break;
+          case "--colors":
+            colors = value;
+            break;
+          case "--out":
+            out = value;
+            outGiven = true;
+            break;
+          case "--frames":
+            frames = Integer.parseInt(value);
+            if (frames < 1)
+              throw new IllegalArgumentException("Need at least one frame: " + value);
+            break;
+          case "--angle-to":
+            angleTo = Double.parseDouble(value);
+            break;
+          case "--radius-to":
+            radiusTo = new BigDecimal(value);
+            break;
+          case "--gif":
+            gif = value;
+            break;
+          case "--fps":
+            fps = Double.parseDouble(value);
+            if (fps <= 0)
+              throw new IllegalArgumentException("Frame rate must be positive: " + value);
+            break;
+          case "--tracing":
+            if (!value.equals("on") && !value.equals("off"))
+              throw new IllegalArgumentException("Tracing must be on or off: " + value);
+            algorithm = value.equals("on") ? RenderEngine.Algorithm.MARIANI_SILVER : RenderEngine.Algorithm.BRUTE_FORCE;
+            break;
+          case "--kernel":
+            try {
+              kernel = RenderEngine.Kernel.valueOf(value.toUpperCase());
+            } catch (IllegalArgumentException e) {
+              throw new IllegalArgumentException("Unknown kernel: " + value);
+            }
+            break;
+          default:
+            throw new IllegalArgumentException("Unknown option: " + opt);
+        }
+      } catch (NumberFormatException e) {
+        throw new IllegalArgumentException("Bad number for " + opt + ": " + value);
+      }
+    }
+
+    // Same defaults the viewer uses for each fractal type and color mode
+    if (x == null) {
+      x = BigDecimal.valueOf(julia ? MainViewer.JULIA_CENTER_X : MainViewer.CENTER_X);
+      y = BigDecimal.valueOf(MainViewer.CENTER_Y);
+    }
+    if (radius == null)
+      radius = BigDecimal.valueOf(julia ? MainViewer.JULIA_RADIUS : MainViewer.RADIUS);
+    if (colors == null)
+      colors = psychedelic ? "99B3FF,FFFFFF" : "FF0000,0000FF";
+
+    String[] c = colors.split(",");
+    if (c.length != 2)
+      throw new IllegalArgumentException("Colors must be C1,C2: " + colors);
+
+    Job job = new Job();
+    job.params = new RenderParams(size, new ViewState(x, y, radius), iterations, julia, angle);
+    job.palette = new Palette(Palette.rgbToHsb(parseColor(c[0])), Palette.rgbToHsb(parseColor(c[1])), psychedelic,
+        iterations);
+    job.algorithm = algorithm;
+    job.kernel = kernel;
+    job.antialias = antialias;
+    job.stats = stats;
+    job.out = new File(out);
+
+    if (frames == 0 && (angleTo != null || radiusTo != null || gif != null || expMap))
+      throw new IllegalArgumentException("--angle-to, --radius-to, --gif and --expmap need --frames");
+    if (expMap && (radiusTo == null || angleTo != null))
+      throw new IllegalArgumentException("--expmap needs --radius-to, and can't sweep the Julia angle");
+    if (expMap && antialias)
+      throw new IllegalArgumentException("--expmap frames are resampled, not rendered, so can't be anti-aliased");
+    if (frames > 0) {
+      job.sequence = new FrameSequence(job.params, frames, angleTo == null ? angle : angleTo,
+          radiusTo == null ? radius : radiusTo);
+      job.gif = gif == null ? null : new File(gif);
+      job.pngs = gif == null || outGiven;
+      job.fps = fps;
+      job.expMap = expMap;
+    }
+    return job;
+  }
+
+  private static int parseColor(String hex) {
+    if (hex.startsWith("#"))
+      hex = hex.substring(1);
+    try {
+      return Integer.parseInt(hex, 16);
+    } catch (NumberFormatException e) {
+      throw new IllegalArgumentException("Bad color: " + hex);
+    }
+  }
+}
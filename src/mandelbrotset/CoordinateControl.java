@@ -1,34 +1,46 @@
 package mandelbrotset;
 
+import java.math.BigDecimal;
 import java.text.DecimalFormat;
 
-import javafx.beans.property.DoubleProperty;
+import javafx.beans.property.ObjectProperty;
+import javafx.beans.property.SimpleObjectProperty;
 import javafx.geometry.Pos;
+import javafx.scene.control.Button;
 import javafx.scene.control.ContentDisplay;
 import javafx.scene.control.Label;
+import javafx.scene.control.TextField;
+import javafx.scene.control.Tooltip;
+import javafx.scene.input.Clipboard;
+import javafx.scene.input.ClipboardContent;
 import javafx.scene.layout.HBox;
 import javafx.scene.layout.VBox;
+import mandelbrotset.render.ViewState;
 
 /** These Text field controls update when the user Right clicks or scrolls,
- * and represent the area in the complex plane to draw. 
- * Precise values can be entered here if a specific region is desired
+ * and represent the area in the complex plane to draw.
+ * Precise values can be entered here if a specific region is desired.
+ * <p>
+ * The center is shown with every digit it has, so deep zoom locations can be
+ * read off and typed back in exactly.
  */
 public class CoordinateControl extends VBox {
 
-  // The NumberTextField class is from a solution I found online to limit 
-  // Text fields to specific number format
-  private NumberTextField imFld, realFld, radiusFld;
+  private final TextField imFld, realFld, radiusFld;
 
-  public CoordinateControl() {
-    // These numbers can get very small, so use scientific notation
-    DecimalFormat df = new DecimalFormat("0.0######E00");
+  private final ObjectProperty<ViewState> view = new SimpleObjectProperty<>(this, "view",
+      new ViewState(MainViewer.CENTER_X, MainViewer.CENTER_Y, MainViewer.RADIUS));
+
+  // The radius only needs to be roughly right, so use short scientific notation
+  private final DecimalFormat radiusFormat = new DecimalFormat("0.0######E00");
 
+  public CoordinateControl() {
     // Add, label and format 3 text fields
-    radiusFld = new NumberTextField(MainViewer.RADIUS, df);
-    realFld = new NumberTextField(MainViewer.CENTER_X, df);
+    radiusFld = new TextField();
+    realFld = new TextField();
     realFld.setPrefWidth(100);
 
-    imFld = new NumberTextField(MainViewer.CENTER_Y, df);
+    imFld = new TextField();
     imFld.setPrefWidth(100);
 
     Label l1 = new Label("View Radius", radiusFld);
@@ -43,24 +55,73 @@ public class CoordinateControl extends VBox {
     l4.setContentDisplay(ContentDisplay.BOTTOM);
     l4.setGraphic(box1);
 
+    // Bookmarks, in the same X,Y,R form BatchRenderer --view takes
+    Button copyBt = new Button("Copy");
+    copyBt.setTooltip(new Tooltip("Copy this location as X,Y,R\n Works with BatchRenderer --view"));
+    copyBt.setOnAction(e -> {
+      ClipboardContent content = new ClipboardContent();
+      content.putString(this.view.get().toString());
+      Clipboard.getSystemClipboard().setContent(content);
+    });
+    Button pasteBt = new Button("Paste");
+    pasteBt.setTooltip(new Tooltip("Go to a location copied earlier"));
+    pasteBt.setOnAction(e -> {
+      String text = Clipboard.getSystemClipboard().getString();
+      if (text == null)
+        return;
+      try {
+        this.view.set(ViewState.parse(text));
+      } catch (IllegalArgumentException ex) {
+        System.err.println(ex.getMessage());
+      }
+    });
+    HBox box2 = new HBox(5, copyBt, pasteBt);
+    box2.setAlignment(Pos.CENTER);
+
+    // Show the view whenever it changes, from here or from the image
+    this.view.addListener((obs, oldValue, newValue) -> showView(newValue));
+    showView(this.view.get());
+
+    // Parse when focus is lost or RETURN is hit, keeping the old view on bad input
+    for (TextField fld : new TextField[] { realFld, imFld, radiusFld }) {
+      fld.setOnAction(e -> parseInput());
+      fld.focusedProperty().addListener((obs, oldValue, newValue) -> {
+        if (!newValue)
+          parseInput();
+      });
+    }
+
     this.setSpacing(2);
     this.setAlignment(Pos.CENTER);
-    this.getChildren().addAll(l4, l1);
+    this.getChildren().addAll(l4, l1, box2);
   }
 
-  // Property getters made accessible for OptionsPane instance to use \\
-  // ---------------------------------------------------------------- \\
-
-  public DoubleProperty radiusProperty() {
-    return this.radiusFld.numberProperty();
+  private void showView(ViewState v) {
+    realFld.setText(v.getCenterX().toPlainString());
+    imFld.setText(v.getCenterY().toPlainString());
+    radiusFld.setText(radiusFormat.format(v.getRadius()));
   }
 
-  public DoubleProperty yProperty() {
-    return this.imFld.numberProperty();
+  private void parseInput() {
+    ViewState v = this.view.get();
+    try {
+      BigDecimal x = new BigDecimal(realFld.getText().trim());
+      BigDecimal y = new BigDecimal(imFld.getText().trim());
+      // The radius field is rounded for display, only take it if it was edited
+      BigDecimal radius = radiusFld.getText().equals(radiusFormat.format(v.getRadius())) ? v.getRadius()
+          : new BigDecimal(radiusFld.getText().trim());
+      ViewState typed = new ViewState(x, y, radius);
+      if (!typed.equals(v))
+        this.view.set(typed);
+    } catch (IllegalArgumentException ex) {
+      // Not a number, or not a valid radius. Keep the old view
+    }
+    showView(this.view.get());
   }
 
-  public DoubleProperty xProperty() {
-    return this.realFld.numberProperty();
+  /** Center and radius shown, at full precision */
+  public ObjectProperty<ViewState> viewProperty() {
+    return this.view;
   }
 
-}
\ No newline at end of file
+}
@@ -3,9 +3,12 @@ package mandelbrotset;
 import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.IOException;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import javax.imageio.ImageIO;
 
+import javafx.application.Platform;
 import javafx.beans.property.BooleanProperty;
 import javafx.beans.property.DoubleProperty;
 import javafx.beans.property.IntegerProperty;
@@ -14,10 +17,15 @@ import javafx.beans.property.SimpleBooleanProperty;
 import javafx.beans.property.SimpleDoubleProperty;
 import javafx.beans.property.SimpleIntegerProperty;
 import javafx.beans.property.SimpleObjectProperty;
+import javafx.beans.property.ReadOnlyBooleanProperty;
+import javafx.beans.property.ReadOnlyDoubleProperty;
+import javafx.concurrent.Service;
+import javafx.concurrent.Task;
 import javafx.embed.swing.SwingFXUtils;
 import javafx.geometry.Point2D;
+import javafx.scene.control.TextInputDialog;
 import javafx.scene.image.ImageView;
-import javafx.scene.image.PixelWriter;
+import javafx.scene.image.PixelFormat;
 import javafx.scene.image.WritableImage;
 import javafx.scene.input.KeyCode;
 import javafx.scene.input.MouseButton;
@@ -26,6 +34,17 @@ import javafx.scene.input.ScrollEvent;
 import javafx.scene.paint.Color;
 import javafx.stage.FileChooser;
 import javafx.stage.FileChooser.ExtensionFilter;
+import mandelbrotset.render.CountCache;
+import mandelbrotset.render.FrameBufferPool;
+import mandelbrotset.render.IterationBuffer;
+import mandelbrotset.render.OrbitBuffer;
+import mandelbrotset.render.Palette;
+import mandelbrotset.render.PixelReuse;
+import mandelbrotset.render.Poster;
+import mandelbrotset.render.RenderEngine;
+import mandelbrotset.render.RenderParams;
+import mandelbrotset.render.TileRenderer;
+import mandelbrotset.render.ViewState;
 
 /**
  * Represents a 2D fractal Image.
@@ -39,27 +58,61 @@ import javafx.stage.FileChooser.ExtensionFilter;
  * Contains change listeners and event handlers to process user mouse and scroll
  * input to position the viewing area.
  * <p>
- * Colors are assigned to pixels in pickColor() method
+ * The math and coloring live in the mandelbrotset.render package, this class
+ * only snapshots its properties into RenderParams and a Palette for each frame.
  */
 public class FractalImageView extends ImageView {
 
-  // Private instance variables used to cache some property values
-  private double _maxIter;
-  private Color _color1;
-  private Color _color2;
-  private int _size;
+  // Computes frames on all cores, independent of JavaFX
+  private final RenderEngine engine = new RenderEngine();
+
+  // Finished frames are kept here between runs, so revisited views load
+  // instead of rendering
+  private static final File CACHE_DIR = new File(System.getProperty("user.home"), ".mandelbrotset/cache");
+  private static final long CACHE_BYTES = 1L << 30;
+  private static final long CACHE_MEMORY_BYTES = 64L << 20;
+
+  // Suggested poster size, 68cm at 300 dpi
+  private static final int POSTER_SIZE = 8000;
+
+  // Frame buffers reused between renders of the same size. Two are enough
+  // for one frame being uploaded while the next is computed
+  private final FrameBufferPool buffers = new FrameBufferPool(2);
+  private final FrameBufferPool countBuffers = new FrameBufferPool(2);
+
+  // Palette for the current colors, null when it needs rebuilding
+  private Palette palette;
+
+  // The iteration counts behind the frame on screen, and the view they are for
+  private final IterationBuffer shown = new IterationBuffer();
+  // true if the shown counts are exactly what a brute force render gives,
+  // not reused from a panned or zoomed frame or filled in by boundary
+  // tracing. Recoloring the same view keeps them exact
+  private boolean shownExact;
+  // Counts and unescaped orbits of the deepest frame of the view, once the
+  // iteration count changed, so changing it again only does the difference.
+  // They are only as exact as the frame they were first made from, which
+  // the engine checks before caching anything made from them
+  private OrbitBuffer orbits;
+
+  // Runs renders off the FX thread, cancelling any that are out of date
+  private final RenderService renderService = new RenderService();
+  // Renders posters to files in the background, one at a time
+  private final PosterService posterService = new PosterService();
+  // Every property change of one event ends up in a single render
+  private final RenderScheduler scheduler = new RenderScheduler(this::renderNow);
 
   // Private settings properties
   private final IntegerProperty maxIterations;
-  private final DoubleProperty centerX;
-  private final DoubleProperty centerY;
-  private final DoubleProperty radius;
+  private final ObjectProperty<ViewState> view;
   private final BooleanProperty psychedelic;
   private final ObjectProperty<Color> inColor;
   private final ObjectProperty<Color> outColor;
   private final BooleanProperty isJulia;
   private final DoubleProperty juliaAngle;
   private final IntegerProperty size;
+  private final BooleanProperty boundaryTracing;
+  private final BooleanProperty antialias;
 
   /** Creates a new ImageView Node with internal fractal image. */
   public FractalImageView() {
@@ -67,9 +120,8 @@ public class FractalImageView extends ImageView {
 
     // Initialize instance properties with appropriate defaults
     this.maxIterations = new SimpleIntegerProperty(this, "Iteration Count", MainViewer.ITERATIONS);
-    this.centerX = new SimpleDoubleProperty(this, "Render Center Point X", MainViewer.CENTER_X);
-    this.centerY = new SimpleDoubleProperty(this, "Render Center Point Y", MainViewer.CENTER_Y);
-    this.radius = new SimpleDoubleProperty(this, "Square render radius", MainViewer.RADIUS);
+    this.view = new SimpleObjectProperty<ViewState>(this, "Render center and radius",
+        new ViewState(MainViewer.CENTER_X, MainViewer.CENTER_Y, MainViewer.RADIUS));
 
     this.psychedelic = new SimpleBooleanProperty(this, "Crazy colors", false);
     this.inColor = new SimpleObjectProperty<Color>(this, "inColor", Color.RED);
@@ -80,6 +132,22 @@ public class FractalImageView extends ImageView {
 
     this.size = new SimpleIntegerProperty(this, "Pixel Size", MainViewer.SIZE);
 
+    this.boundaryTracing = new SimpleBooleanProperty(this, "Mariani-Silver rendering", false);
+    this.antialias = new SimpleBooleanProperty(this, "Anti-aliasing", false);
+
+    // Use the SIMD kernel when the JVM was started with the Vector API
+    if (RenderEngine.isVectorAvailable())
+      this.engine.setKernel(RenderEngine.Kernel.VECTOR);
+
+    try {
+      this.engine.setCache(new CountCache(CACHE_DIR, CACHE_BYTES, CACHE_MEMORY_BYTES));
+    } catch (IOException e) {
+      System.err.println("Frame cache disabled, could not open " + CACHE_DIR + ": " + e.getMessage());
+    }
+    // Frame latency and throughput for jconsole and the like
+    this.engine.getMetrics().setRequestCounters(this.scheduler::getRequested, this.scheduler::getCoalesced);
+    this.engine.getMetrics().register("viewer");
+
     initHandlers();
   }
 
@@ -92,10 +160,31 @@ public class FractalImageView extends ImageView {
       render();
     });
 
-    // Re-render whenever these properties change
-    this.inColor.addListener(ov -> render());
-    this.outColor.addListener(ov -> render());
-    this.psychedelic.addListener(ov -> render());
+    // Colors only need the palette rebuilt, render() then just recolors
+    this.inColor.addListener(ov -> recolor());
+    this.outColor.addListener(ov -> recolor());
+    this.psychedelic.addListener(ov -> recolor());
+
+    // The palette is built for one iteration count
+    this.maxIterations.addListener(ov -> this.palette = null);
+
+    // Switch render algorithm. Its counts can differ by a few pixels, so
+    // the stored ones are thrown away
+    this.boundaryTracing.addListener(ov -> {
+      this.engine.setAlgorithm(
+          this.boundaryTracing.get() ? RenderEngine.Algorithm.MARIANI_SILVER : RenderEngine.Algorithm.BRUTE_FORCE);
+      int[] old = this.shown.clear();
+      if (old != null)
+        this.countBuffers.release(old);
+      this.orbits = null;
+      render();
+    });
+
+    // The stored counts stay valid, render() anti-aliases them again if needed
+    this.antialias.addListener(ov -> {
+      this.engine.setAntialias(this.antialias.get());
+      render();
+    });
 
     // Re-render when Julia angle changes
     this.juliaAngle.addListener(ov -> render());
@@ -103,23 +192,24 @@ public class FractalImageView extends ImageView {
     // Reset defaults when switching fractal types
     this.isJulia.addListener(ov -> {
       if (isJulia.getValue()) {
-        this.centerX.set(MainViewer.JULIA_CENTER_X);
-        this.radius.set(MainViewer.JULIA_RADIUS);
+        this.view.set(new ViewState(MainViewer.JULIA_CENTER_X, MainViewer.CENTER_Y, MainViewer.JULIA_RADIUS));
       } else {
-        this.centerX.set(MainViewer.CENTER_X);
-        this.radius.set(MainViewer.RADIUS);
+        this.view.set(new ViewState(MainViewer.CENTER_X, MainViewer.CENTER_Y, MainViewer.RADIUS));
       }
-      this.centerY.set(MainViewer.CENTER_Y);
       this.maxIterations.set(MainViewer.ITERATIONS);
       render();
     });
 
-    // Right click to set a new center point
+    // Right click to set a new center point. Done on the exact view, so it
+    // works at any zoom depth. Snapped to whole pixels so the pixels still on
+    // screen can be reused
     addEventFilter(MouseEvent.MOUSE_CLICKED, e -> {
       if (e.getButton() == MouseButton.SECONDARY) {
-        Point2D fPoint = convertSpace(e.getX(), e.getY());
-        this.centerX.set(fPoint.getX());
-        this.centerY.set(fPoint.getY());
+        int n = this.size.get();
+        double half = n / 2.0;
+        double Px = half + Math.rint(e.getX() - half);
+        double Py = half + Math.rint(e.getY() - half);
+        this.view.set(this.view.get().centerOn(Px, Py, n));
         render();
       }
     });
@@ -129,19 +219,24 @@ public class FractalImageView extends ImageView {
       if (e.getDeltaY() == 0)
         return;
 
-      double t = this.radius.getValue();
-      this.radius.set((e.getDeltaY() < 0) ? t + (MainViewer.ZOOM_PRCNT * t) : t - (MainViewer.ZOOM_PRCNT * t));
+      double factor = (e.getDeltaY() < 0) ? 1 + MainViewer.ZOOM_PRCNT : 1 - MainViewer.ZOOM_PRCNT;
+      this.view.set(this.view.get().zoom(factor));
       render();
       e.consume();
     });
 
-    // Increment the iteration count when arrow keys pressed
+    // Increment the iteration count when arrow keys pressed. Page up and
+    // down zoom by exactly 2, which keeps every other pixel
     setOnKeyPressed(e -> {
       int n = this.maxIterations.getValue();
       if (e.getCode() == KeyCode.UP) {
         this.maxIterations.set((int) (n + (n * MainViewer.ZOOM_PRCNT)));
       } else if (e.getCode() == KeyCode.DOWN) {
         this.maxIterations.set((int) (n - (n * MainViewer.ZOOM_PRCNT)));
+      } else if (e.getCode() == KeyCode.PAGE_UP) {
+        this.view.set(this.view.get().zoom(0.5));
+      } else if (e.getCode() == KeyCode.PAGE_DOWN) {
+        this.view.set(this.view.get().zoom(2));
       }
       render();
       e.consume();
@@ -150,15 +245,7 @@ public class FractalImageView extends ImageView {
 
   /** Open a file chooser and save the internal fractal image */
   public void saveImageToFile() {
-    // Let the user select a location to store the image
-    // Default is "home/pictures"
-    FileChooser chooser = new FileChooser();
-    chooser.setTitle("Save Image");
-    chooser.setInitialDirectory(
-        new File(System.getProperty("user.home") + System.getProperty("file.separator") + "Pictures"));
-    chooser.setInitialFileName("mandelbrot.png");
-    chooser.getExtensionFilters().add(new ExtensionFilter("Image file (*.png)", "*.png"));
-    File outFile = chooser.showSaveDialog(this.getScene().getWindow());
+    File outFile = choosePng("Save Image", "mandelbrot.png");
 
     if (outFile != null) {
       // Convert to an ImageBuffer we can write to a file
@@ -172,133 +259,368 @@ public class FractalImageView extends ImageView {
     }
   }
 
-   /** Render the fractal image according to current property settings */
+  /**
+   * Ask for a size and a file, then render the current view at that size
+   * straight to the file in the background. Any size works, only a band of
+   * rows is ever in memory (see Poster). While a poster is being rendered
+   * this cancels it instead, deleting the unfinished file.
+   */
+  public void savePosterToFile() {
+    if (this.posterService.isRunning()) {
+      this.posterService.cancel();
+      return;
+    }
+    TextInputDialog sizeDialog = new TextInputDialog(Integer.toString(POSTER_SIZE));
+    sizeDialog.setTitle("Save Poster");
+    sizeDialog.setHeaderText(null);
+    sizeDialog.setContentText("Width and height in pixels");
+    Optional<String> answer = sizeDialog.showAndWait();
+    if (answer.isEmpty())
+      return;
+    int posterSize;
+    try {
+      posterSize = Integer.parseInt(answer.get().trim());
+      if (posterSize <= 0)
+        throw new NumberFormatException();
+    } catch (NumberFormatException e) {
+      System.err.println("Not a valid poster size: " + answer.get());
+      return;
+    }
+    File outFile = choosePng("Save Poster", "poster.png");
+    if (outFile == null)
+      return;
+
+    RenderParams params = new RenderParams(posterSize, this.view.get(), this.maxIterations.get(), this.isJulia.get(),
+        this.juliaAngle.get());
+    this.posterService.render(params, currentPalette(), outFile);
+    System.out.println("Rendering " + posterSize + "x" + posterSize + " poster to " + outFile.getAbsolutePath());
+  }
+
+  /**
+   * Background service that renders one poster per Task, band by band
+   * straight to its file (see Poster). Cancelling stops it between two tiles
+   * and deletes the file.
+   */
+  private class PosterService extends Service<Boolean> {
+    // What the next task renders, only touched on the FX thread
+    private RenderParams params;
+    private Palette palette;
+    private File file;
+
+    PosterService() {
+      setOnSucceeded(e -> {
+        if (getValue())
+          System.out.println("Poster saved to " + this.file.getAbsolutePath());
+      });
+      setOnCancelled(e -> System.out.println("Poster cancelled, " + this.file.getAbsolutePath() + " is deleted"));
+      setOnFailed(e -> System.err.println("Could not save poster: " + getException().getMessage()));
+    }
+
+    /** Start rendering a poster. Only one runs at a time, call when none is running */
+    void render(RenderParams params, Palette palette, File file) {
+      this.params = params;
+      this.palette = palette;
+      this.file = file;
+      restart();
+    }
+
+    @Override
+    protected Task<Boolean> createTask() {
+      return new PosterTask(this.params, this.palette, this.file);
+    }
+  }
+
+  /** Renders one poster, true once it is written or false if cancelled */
+  private class PosterTask extends Task<Boolean> implements TileRenderer.Monitor {
+    private final RenderParams params;
+    private final Palette palette;
+    private final File file;
+
+    PosterTask(RenderParams params, Palette palette, File file) {
+      this.params = params;
+      this.palette = palette;
+      this.file = file;
+    }
+
+    @Override
+    protected Boolean call() throws IOException {
+      updateProgress(0, params.getSize());
+      return Poster.render(engine, params, palette, file, this);
+    }
+
+    // Task.isCancelled() already satisfies TileRenderer.Monitor
+
+    @Override
+    public void tileDone(int done, int total) {
+      updateProgress(done, total);
+    }
+  }
+
+  /** Let the user select a location to store an image, default is "home/pictures" */
+  private File choosePng(String title, String name) {
+    FileChooser chooser = new FileChooser();
+    chooser.setTitle(title);
+    chooser.setInitialDirectory(
+        new File(System.getProperty("user.home") + System.getProperty("file.separator") + "Pictures"));
+    chooser.setInitialFileName(name);
+    chooser.getExtensionFilters().add(new ExtensionFilter("Image file (*.png)", "*.png"));
+    return chooser.showSaveDialog(this.getScene().getWindow());
+  }
+
+  /**
+   * Request a render of the fractal image according to current property
+   * settings. The render runs once the current event is handled, so all
+   * requests made while handling it (one per changed property, typically)
+   * make a single render. Must be called on the JavaFX Application Thread.
+   */
   public void render() {
-    // Use PixelWriter to edit this ImageView's internal Image pixels
-    PixelWriter pixels = ((WritableImage) this.getImage()).getPixelWriter();
-
-    // Cache current settings from bound properties, once per render
-    // No need to lookup every pixel and iteration
-    _maxIter = this.maxIterations.doubleValue();
-    _color1 = this.outColor.getValue();
-    _color2 = this.inColor.getValue();
-    _size = this.sizeProperty().getValue();
-
-    // The magic radius 0.7885 comes from this animation:
-    // https://en.wikipedia.org/wiki/Julia_set#/media/File:JSr07885.gif
-    boolean doJulia = this.isJulia.getValue();
-    Complex juliaConstant = Complex.polar2Rect(0.7885, this.juliaAngle.doubleValue());
-
-    for (int Py = 0; Py < _size; Py++) {
-      for (int Px = 0; Px < _size; Px++) {
-        // Scale image coordinates to range
-        // double z = 2.0 * (Px - _size / 2) / (_size / 2);
-        // double zi = 1.33 * (Py - _size / 2) / (_size / 2);
-        Point2D fPoint = convertSpace(Px, Py);
-
-        int steps;
-        // When calculating a mandelbrot set, Z starts at 0, and C changes per point
-        // When calculating a julia set, Z is determined by the point, and C is some
-        if (doJulia) {
-          steps = checkConvergence(fPoint.getX(), fPoint.getY(), juliaConstant.getReal(), juliaConstant.getIm());
-        } else {
-          steps = checkConvergence(0.0, 0.0, fPoint.getX(), fPoint.getY());
-        }
+    this.scheduler.request();
+  }
 
-        pixels.setColor(Px, Py, pickColor(steps));
-      }
+  /**
+   * Render the fractal image according to current property settings.
+   * <p>
+   * If the iteration counts of the shown frame are still valid for the
+   * current view (only colors changed, or nothing did) the frame is recolored
+   * from them right away, or with anti-aliasing on, copied from them and
+   * anti-aliased in the background. Otherwise it is computed by the
+   * RenderService. A render that is still running is cancelled first, so only
+   * the newest view state is ever drawn.
+   */
+  private void renderNow() {
+    if (!this.engine.isAntialias() && this.shown.matches(currentParams())) {
+      this.renderService.cancel();
+      redraw();
+      return;
+    }
+    this.renderService.restart();
+  }
+
+  /** Rebuild the palette after a color setting changed, and redraw */
+  private void recolor() {
+    this.palette = null;
+    render();
+  }
+
+  /** Color the stored iteration counts with the current palette and show them */
+  private void redraw() {
+    int[] argb = buffers.acquire(this.shown.getCounts().length);
+    this.shown.recolor(currentPalette(), argb);
+    upload(argb);
+    buffers.release(argb);
+  }
+
+  /** Write a whole frame to the image, unless the image was resized meanwhile */
+  private void upload(int[] argb) {
+    WritableImage image = (WritableImage) getImage();
+    int w = (int) image.getWidth();
+    if (argb.length == w * (int) image.getHeight()) {
+      // Every pixel is opaque, so premultiplied ARGB is the same as plain
+      // ARGB and is the format the image stores natively
+      image.getPixelWriter().setPixels(0, 0, w, w, PixelFormat.getIntArgbPreInstance(), argb, 0, w);
+    }
+  }
+
+  /** A finished frame: its colors plus the iteration counts they came from */
+  private static class Frame {
+    final RenderParams params;
+    final int[] counts;
+    final int[] argb;
+    // Orbits to change the iteration count of the view with, or null
+    final OrbitBuffer orbits;
+    // See shownExact
+    final boolean exact;
+
+    Frame(RenderParams params, int[] counts, int[] argb, OrbitBuffer orbits, boolean exact) {
+      this.params = params;
+      this.counts = counts;
+      this.argb = argb;
+      this.orbits = orbits;
+      this.exact = exact;
     }
   }
 
   /**
-   * Convert from image pixel space to point on complex plane
-   * 
-   * @param Px Pixel X position
-   * @param Py Pixel Y position
-   * @return Corrisponding point on Complex Plane
+   * Background service that renders one frame per Task. The frame is split
+   * into tiles that are computed on every core by the RenderEngine, then
+   * written to the image in one bulk setPixels() call when the task succeeds.
+   * Coarse previews are shown while it works, see RenderTask.
    */
-  public Point2D convertSpace(double Px, double Py) {
-    // From requested center point and radius,
-    double radius = this.radius.doubleValue();
-    double centerX = this.centerX.getValue();
-    double centerY = this.centerY.getValue();
+  private class RenderService extends Service<Frame> {
+
+    RenderService() {
+      setOnSucceeded(e -> {
+        Frame frame = getValue();
+        if (frame == null)
+          return;
+        upload(frame.argb);
+        // setPixels() copies, so the buffer can go straight back to the pool
+        buffers.release(frame.argb);
+
+        // Keep the counts around so color changes can skip iterating
+        int[] old = shown.store(frame.params, frame.counts);
+        if (old != null)
+          countBuffers.release(old);
+        shownExact = frame.exact;
+        orbits = frame.orbits;
+      });
+    }
+
+    /** Called on the FX thread, so it is safe to read the properties here */
+    @Override
+    protected Task<Frame> createTask() {
+      // Snapshot current settings from bound properties, once per render.
+      // The worker threads only ever see this immutable copy
+      RenderParams params = currentParams();
+      // The same view at another iteration count carries on from the orbits
+      // of the deepest frame so far, or of the one on screen. At the same
+      // count it renders the normal way, with whatever kernel and algorithm
+      // are chosen now
+      RenderParams before = shown.getParams();
+      if ((orbits == null || !orbits.canServe(params)) && before != null
+          && before.getMaxIter() != params.getMaxIter() && OrbitBuffer.canServe(before, params))
+        orbits = OrbitBuffer.of(before, shown.getCounts(), shownExact);
+      if (orbits != null && orbits.canServe(params) && orbits.getMaxIter() != params.getMaxIter())
+        return new RenderTask(params, currentPalette(), orbits);
+      // After a whole pixel pan or 2x zoom most counts are on screen already
+      PixelReuse reuse = shown.getParams() == null ? null : PixelReuse.between(shown.getParams(), params);
+      return new RenderTask(params, currentPalette(), reuse, reuse == null ? null : shown.getCounts(), shownExact);
+    }
+  }
+
+  /**
+   * Computes one frame, or null if it was cancelled. Renders progressively,
+   * showing blocky previews of the frame within milliseconds while the full
+   * resolution is still being computed. Frames that line up with the one on
+   * screen copy its counts instead, which is quicker than any preview.
+   */
+  private class RenderTask extends Task<Frame> implements TileRenderer.Monitor, RenderEngine.PassListener {
+    private final RenderParams params;
+    private final Palette palette;
+    // Pixels shared with the frame on screen, or null
+    private final PixelReuse reuse;
+    // Counts of the frame on screen. Only released to the pool once a newer
+    // frame replaces it, and every task started before that is cancelled by
+    // then, so a stale read only ever ends up in a discarded frame
+    private final int[] shownCounts;
+    // See shownExact
+    private final boolean shownCountsExact;
+    // Orbits of the view at another iteration count, or null
+    private final OrbitBuffer orbits;
+
+    // The frame being rendered, previews are shown straight from it
+    private volatile int[] argb;
+    // At most one preview waits for the FX thread, it shows the newest pass anyway
+    private final AtomicBoolean previewQueued = new AtomicBoolean();
+
+    RenderTask(RenderParams params, Palette palette, PixelReuse reuse, int[] shownCounts, boolean shownCountsExact) {
+      this.params = params;
+      this.palette = palette;
+      this.reuse = reuse;
+      this.shownCounts = shownCounts;
+      this.shownCountsExact = shownCountsExact;
+      this.orbits = null;
+    }
 
-    // Math algorithm could probably be optimized, division and multiplication is slow
-    // Scales and translates the input point
-    double fReal = ((Px * (2 * radius)) / _size) + (centerX - radius);
-    double fIm = ((Py * (2 * radius)) / _size) + (centerY - radius);
+    /** A new iteration count for the view of orbits */
+    RenderTask(RenderParams params, Palette palette, OrbitBuffer orbits) {
+      this.params = params;
+      this.palette = palette;
+      this.reuse = null;
+      this.shownCounts = null;
+      this.shownCountsExact = false;
+      this.orbits = orbits;
+    }
 
-    return new Point2D(fReal, fIm);
+    @Override
+    protected Frame call() {
+      updateProgress(0, engine.tileCount(params));
+      int size = params.getSize();
+      int[] counts = countBuffers.acquire(size * size);
+      int[] argb = buffers.acquire(size * size);
+      this.argb = argb;
+      boolean finished = false;
+      OrbitBuffer deepest = null;
+      boolean exact;
+      try {
+        if (orbits != null) {
+          deepest = engine.renderDeeper(params, palette, counts, argb, this, orbits);
+          finished = deepest != null;
+          exact = orbits.isExact();
+        } else if (reuse != null) {
+          finished = engine.renderReusing(params, palette, counts, argb, this, reuse, shownCounts);
+          // The same view copies every count as it was, anything else is only nearly exact
+          exact = reuse.isIdentity() && shownCountsExact;
+        } else {
+          finished = engine.renderProgressive(params, palette, counts, argb, this, this);
+          exact = engine.getAlgorithm() == RenderEngine.Algorithm.BRUTE_FORCE;
+        }
+      } finally {
+        // All tiles have stopped writing by now, so a cancelled frame's buffers
+        // can be reused right away
+        if (!finished) {
+          countBuffers.release(counts);
+          buffers.release(argb);
+        }
+      }
+      return finished ? new Frame(params, counts, argb, deepest, exact) : null;
+    }
+
+    // Task.isCancelled() already satisfies TileRenderer.Monitor
+
+    @Override
+    public void passDone(int step) {
+      if (!previewQueued.compareAndSet(false, true))
+        return;
+      Platform.runLater(() -> {
+        previewQueued.set(false);
+        // A cancelled task's buffers may already be in use by the next one.
+        // Otherwise the next pass may be writing while this uploads, which
+        // only means some blocks show up finer already
+        if (!isCancelled())
+          upload(this.argb);
+      });
+    }
+
+    @Override
+    public void tileDone(int done, int total) {
+      updateProgress(done, total);
+    }
+  }
+
+  /** Snapshot of the view settings for the engine */
+  public RenderParams currentParams() {
+    return new RenderParams(this.size.get(), this.view.get(), this.maxIterations.get(), this.isJulia.get(),
+        this.juliaAngle.get());
   }
 
   /**
-   * The actual fractal algorithm implementation. Checks whether f(Z)=Z² + C
-   * converges when iterated where Z and C are complex numbers.
-   * <p>
-   * For the mandelbrot set, Z=0 initially, and C is our pixel.
-   * <p>
-   * For the Julia Set, Z is the pixel, and C is some arbitrary complex number of
-   * magnitude < 2. Different C values give different Julia Sets.
-   * <p>
-   * The math here calculates the imaginary and real parts individually, instead
-   * of using some sort of ComplexNumber object for maximum speed.
-   * 
-   * @return the number of iterations before convergence. n <= maxIter
-   * <p> 
-   * Algorithm from
-   * https://en.wikipedia.org/wiki/Plotting_algorithms_for_the_Mandelbrot_set
+   * The palette for the current color settings. Its lookup table is only
+   * rebuilt after a color, color mode or iteration count change.
    */
-  protected int checkConvergence(double z, double zi, double c, double ci) {
-    // Initial complex number Z = (z + zi)
-
-    // Iteration counter
-    int iter = 0;
-
-    // |Z| must remain <= 2 in every iteration for point c to be
-    // in the prisoner set
-    while (z * z + zi * zi <= 4.0 && iter <= _maxIter) {
-      // Calculate Re(z^2 + c)
-      double zT = z * z - zi * zi + c;
-      // Calculate Im(z^2 + c)
-      double ziT = 2 * z * zi + ci;
-      zi = ziT;
-      z = zT;
-      iter++;
+  public Palette currentPalette() {
+    if (this.palette == null) {
+      this.palette = new Palette(toHsb(this.outColor.getValue()), toHsb(this.inColor.getValue()),
+          this.psychedelic.get(), this.maxIterations.get());
     }
-    return iter;
+    return this.palette;
+  }
+
+  private static double[] toHsb(Color c) {
+    return new double[] { c.getHue(), c.getSaturation(), c.getBrightness() };
   }
 
   /**
-   * Set the hue of each pixel based on the number of iterations completed. The
-   * range is set by user input. Two modes are given: Normal mode is a gradient
-   * from c1 -> c2. Psychedelic produces random looking well defined bands of
-   * color.
-   * <p>
-   * The pixel will be black if it is determined to be *in* the set
+   * Convert from image pixel space to point on complex plane, rounded to
+   * doubles. See ViewState.toReal() for the exact point
    * 
-   * @param N The iteration count to calculate color for
-   * @return javafx.scene.paint.Color
+   * @param Px Pixel X position
+   * @param Py Pixel Y position
+   * @return Corrisponding point on Complex Plane
    */
-  protected Color pickColor(int N) {
-
-    double hue;
-    double value;
-    double sat;
-
-    // Math is a bit ad-hoc for what looked good to me. Basically a function
-    // of convergence speed, i.e. the ratio between max iterations and actual
-    // iterations
-    // for this pixel
-    if (this.psychedelic.getValue()) {
-      hue = _color1.getHue() * (_maxIter / N);
-      value = (N < _maxIter) ? 1.0 : 0.0;
-      sat = _color1.getSaturation();
-    } else {
-      hue = _color2.getHue() * (N / _maxIter) + _color1.getHue() * (_maxIter - N) / _maxIter;
-      value = (N < _maxIter) ? (_color1.getBrightness() + _color2.getBrightness()) / 2.0 : 0.0;
-      sat = (_color1.getSaturation() + _color2.getSaturation()) / 2.0;
-    }
-    return Color.hsb(hue, sat, value);
+  public Point2D convertSpace(double Px, double Py) {
+    RenderParams params = currentParams();
+    return new Point2D(params.toReal(Px), params.toIm(Py));
   }
 
   // Public Property getters to configure parameters \\
@@ -308,16 +630,9 @@ public class FractalImageView extends ImageView {
     return this.maxIterations;
   }
 
-  public DoubleProperty radiusProperty() {
-    return this.radius;
-  }
-
-  public DoubleProperty centerXProperty() {
-    return this.centerX;
-  }
-
-  public DoubleProperty centerYProperty() {
-    return this.centerY;
+  /** Center and radius of the view, at full precision */
+  public ObjectProperty<ViewState> viewProperty() {
+    return this.view;
   }
 
   public ObjectProperty<Color> inColorProperty() {
@@ -343,4 +658,32 @@ public class FractalImageView extends ImageView {
   public IntegerProperty sizeProperty() {
     return this.size;
   }
+
+  public BooleanProperty boundaryTracingProperty() {
+    return this.boundaryTracing;
+  }
+
+  public BooleanProperty antialiasProperty() {
+    return this.antialias;
+  }
+
+  /** Render requests so far, and how many of them were folded into another one */
+  public RenderScheduler getScheduler() {
+    return this.scheduler;
+  }
+
+  /** Progress of the render in flight, from 0 to 1 (or -1 before it starts) */
+  public ReadOnlyDoubleProperty renderProgressProperty() {
+    return this.renderService.progressProperty();
+  }
+
+  /** Progress of the poster being saved, from 0 to 1 (or -1 before it starts) */
+  public ReadOnlyDoubleProperty posterProgressProperty() {
+    return this.posterService.progressProperty();
+  }
+
+  /** true while a poster is being saved, savePosterToFile() cancels it then */
+  public ReadOnlyBooleanProperty posterRunningProperty() {
+    return this.posterService.runningProperty();
+  }
 }
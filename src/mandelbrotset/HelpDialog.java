@@ -14,6 +14,7 @@ public class HelpDialog extends Alert {
     setContentText(
       "- Use RMB to pick a new center coordinate\n" +
       "- Scroll wheel will zoom in/out\n" +
+      "- PAGE UP and PAGE DOWN zoom in/out by 2x\n" +
       "- Use UP and DOWN arrows to increase/decrease the iteration count\n" +
       "- If the generated image is larger than the window, LMB to drag and pan the view\n");
   }
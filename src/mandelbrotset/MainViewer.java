@@ -1,6 +1,7 @@
 package mandelbrotset;
 
 import javafx.application.Application;
+import javafx.beans.binding.Bindings;
 import javafx.geometry.Insets;
 import javafx.scene.Scene;
 import javafx.scene.image.Image;
@@ -69,9 +70,7 @@ public class MainViewer extends Application {
     });
 
     // Bind view window properties from options
-    selectedFrac.radiusProperty().bindBidirectional(options.radiusProperty());
-    selectedFrac.centerXProperty().bindBidirectional(options.centerXProperty());
-    selectedFrac.centerYProperty().bindBidirectional(options.centerYProperty());
+    selectedFrac.viewProperty().bindBidirectional(options.viewProperty());
 
     // Bind size property from options
     selectedFrac.sizeProperty().bind(options.sizeProperty());
@@ -79,12 +78,22 @@ public class MainViewer extends Application {
     // Bind radio toggle button for color modes
     selectedFrac.psychedelicProperty().bind(options.psychSelectedProperty());
 
+    // Bind render algorithm option
+    selectedFrac.boundaryTracingProperty().bind(options.boundaryTracingProperty());
+    selectedFrac.antialiasProperty().bind(options.antialiasProperty());
+
     // Bind Julia Set related settings
     selectedFrac.isJuliaProperty().bind(options.typeSelectedProperty().not());
     selectedFrac.juliaAngleProperty().bind(options.juliaAngleProperty());
 
+    // Show background render progress, or the poster's while one is saved
+    options.renderProgressProperty().bind(Bindings.when(selectedFrac.posterRunningProperty())
+        .then(selectedFrac.posterProgressProperty()).otherwise(selectedFrac.renderProgressProperty()));
+    options.posterRunningProperty().bind(selectedFrac.posterRunningProperty());
+
     // Create button events to MandelbrotPane instance methods
     options.setSaveAction(e -> selectedFrac.saveImageToFile());
+    options.setPosterAction(e -> selectedFrac.savePosterToFile());
     options.setRenderAction(e -> selectedFrac.render());
 
     /* --- Image area (left) --- */
@@ -1,20 +1,23 @@
 package mandelbrotset;
 
+import javafx.beans.property.BooleanProperty;
 import javafx.beans.property.DoubleProperty;
 import javafx.beans.property.ObjectProperty;
 import javafx.beans.property.ReadOnlyBooleanProperty;
 import javafx.beans.property.ReadOnlyDoubleProperty;
 import javafx.beans.property.ReadOnlyObjectProperty;
+import javafx.beans.property.SimpleBooleanProperty;
 import javafx.event.ActionEvent;
 import javafx.event.EventHandler;
 import javafx.geometry.Insets;
-import javafx.geometry.Point2D;
 import javafx.geometry.Pos;
 import javafx.scene.Node;
 import javafx.scene.control.Button;
+import javafx.scene.control.CheckBox;
 import javafx.scene.control.ColorPicker;
 import javafx.scene.control.ContentDisplay;
 import javafx.scene.control.Label;
+import javafx.scene.control.ProgressBar;
 import javafx.scene.control.RadioButton;
 import javafx.scene.control.Spinner;
 import javafx.scene.control.ToggleGroup;
@@ -27,6 +30,7 @@ import javafx.scene.input.KeyEvent;
 import javafx.scene.layout.HBox;
 import javafx.scene.layout.VBox;
 import javafx.scene.paint.Color;
+import mandelbrotset.render.ViewState;
 
 public class OptionsPanel extends VBox {
 
@@ -43,12 +47,21 @@ public class OptionsPanel extends VBox {
 
   private RadioButton psychBt;
 
+  private CheckBox tracingBox;
+  private CheckBox antialiasBox;
+
   // This button is *True* when mandelbrot is selected
   private FractalToggleButton typeSelectBt;
 
   // Buttons to render and save fractal
   private Button renderBt;
   private Button saveBt;
+  private Button posterBt;
+  // The poster button cancels while a poster is being saved
+  private final BooleanProperty posterRunning = new SimpleBooleanProperty(this, "Saving poster", false);
+
+  // Shows how far along the current render is
+  private ProgressBar renderProgress;
 
   /**
    * This class has all the settings to configure and save a fractal image.
@@ -63,10 +76,13 @@ public class OptionsPanel extends VBox {
 
     this.renderBt = new Button("(Re)render");
 
+    this.renderProgress = new ProgressBar(0);
+    this.renderProgress.setTooltip(new Tooltip("Render progress"));
+
     Label infoLabel = new Label("Hover for tooltips");
 
-    // Add render button and label to top of Vbox
-    this.getChildren().addAll(renderBt, infoLabel);
+    // Add render button, progress and label to top of Vbox
+    this.getChildren().addAll(renderBt, renderProgress, infoLabel);
 
     // Switches from Julia set to Mandelbrot set view
     this.typeSelectBt = new FractalToggleButton("Mandelbrot Set");
@@ -83,12 +99,27 @@ public class OptionsPanel extends VBox {
     // Add iteration count and slider controls
     this.getChildren().addAll(getIterSpinner());
 
+    // Faster rendering of views with lots of black
+    this.tracingBox = new CheckBox("Fast interior fill");
+    this.tracingBox.setTooltip(new Tooltip("Only compute the edges of areas that are all one color (Mariani-Silver)"
+        + "\n Much faster at high iteration counts, may miss tiny details"));
+    this.getChildren().add(this.tracingBox);
+
+    // Smoother edges for a bit more work
+    this.antialiasBox = new CheckBox("Anti-aliasing");
+    this.antialiasBox.setTooltip(new Tooltip("Take 16 samples in pixels on a sharp edge and average them"
+        + "\n Smooths jagged edges and noisy areas, costs extra time only on the edges"));
+    this.getChildren().add(this.antialiasBox);
+
     // Add coordinate and size controls (and save global referance)
     this.getChildren().add(this.coordControl = new CoordinateControl());
     this.getChildren().add(this.sizeControl = new SizeControl());
 
     // Create a button to save the current image to a file
-    HBox box2 = new HBox(5, getResetButton(), this.saveBt = new Button("Save Image"));
+    this.posterBt = new Button("Save Poster");
+    this.posterBt.setTooltip(new Tooltip("Render this view at any size, 20000 pixels and more, straight to a file"));
+    this.posterRunning.addListener((obs, was, running) -> this.posterBt.setText(running ? "Cancel Poster" : "Save Poster"));
+    HBox box2 = new HBox(5, getResetButton(), this.saveBt = new Button("Save Image"), this.posterBt);
     box2.setAlignment(Pos.CENTER);
     this.getChildren().add(box2);
 
@@ -115,13 +146,11 @@ public class OptionsPanel extends VBox {
     Button resetBt = new Button("Reset");
     resetBt.setOnAction(e -> {
       if (typeSelectBt.isSelected()) {
-        coordControl.radiusProperty().set(MainViewer.RADIUS);
-        coordControl.xProperty().set(MainViewer.CENTER_X);
+        coordControl.viewProperty().set(new ViewState(MainViewer.CENTER_X, MainViewer.CENTER_Y, MainViewer.RADIUS));
       } else {
-        coordControl.radiusProperty().set(MainViewer.JULIA_RADIUS);
-        coordControl.xProperty().set(MainViewer.JULIA_CENTER_X);
+        coordControl.viewProperty()
+            .set(new ViewState(MainViewer.JULIA_CENTER_X, MainViewer.CENTER_Y, MainViewer.JULIA_RADIUS));
       }
-      coordControl.yProperty().set(MainViewer.CENTER_Y);
 
       juliaControls.angleProperty().set(MainViewer.JULIA_ANGLE);
 
@@ -205,6 +234,10 @@ public class OptionsPanel extends VBox {
     saveBt.setOnAction(e);
   }
 
+  public void setPosterAction(EventHandler<ActionEvent> e) {
+    posterBt.setOnAction(e);
+  }
+
   // Public property to be bound in MainViewer.java \\
   // --------------------------------------------- \\
 
@@ -224,41 +257,37 @@ public class OptionsPanel extends VBox {
     return this.iterationSpinner.getValueFactory().valueProperty();
   }
 
-  public DoubleProperty radiusProperty() {
-    return this.coordControl.radiusProperty();
-  }
-
-  public double getRadius() {
-    return this.coordControl.radiusProperty().getValue();
+  public ObjectProperty<ViewState> viewProperty() {
+    return this.coordControl.viewProperty();
   }
 
-  public void setRadius(double value) {
-    this.coordControl.radiusProperty().set((value <= 4) ? value : 4);
+  public ReadOnlyBooleanProperty typeSelectedProperty() {
+    return this.typeSelectBt.selectedProperty();
   }
 
-  public DoubleProperty centerXProperty() {
-    return this.coordControl.xProperty();
+  public ReadOnlyDoubleProperty juliaAngleProperty() {
+    return this.juliaControls.angleProperty();
   }
 
-  public DoubleProperty centerYProperty() {
-    return this.coordControl.yProperty();
+  public ReadOnlyObjectProperty<Integer> sizeProperty() {
+    return this.sizeControl.valueProperty();
   }
 
-  public void setCenter(Point2D point) {
-    this.coordControl.xProperty().set(point.getX());
-    this.coordControl.yProperty().set(point.getY());
+  public ReadOnlyBooleanProperty boundaryTracingProperty() {
+    return this.tracingBox.selectedProperty();
   }
 
-  public ReadOnlyBooleanProperty typeSelectedProperty() {
-    return this.typeSelectBt.selectedProperty();
+  public ReadOnlyBooleanProperty antialiasProperty() {
+    return this.antialiasBox.selectedProperty();
   }
 
-  public ReadOnlyDoubleProperty juliaAngleProperty() {
-    return this.juliaControls.angleProperty();
+  public DoubleProperty renderProgressProperty() {
+    return this.renderProgress.progressProperty();
   }
 
-  public ReadOnlyObjectProperty<Integer> sizeProperty() {
-    return this.sizeControl.valueProperty();
+  /** Bind to whether a poster is being saved, the poster button offers to cancel it then */
+  public BooleanProperty posterRunningProperty() {
+    return this.posterRunning;
   }
 
 }
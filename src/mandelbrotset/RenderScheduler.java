@@ -0,0 +1,55 @@
+package mandelbrotset;
+
+import javafx.application.Platform;
+
+/**
+ * Folds bursts of render requests into one render.
+ * <p>
+ * A single user action often changes several properties, each of whose
+ * listeners asks for a render (Reset sets the view, angle, size and
+ * iterations one at a time). Rendering on every request would start and
+ * cancel a frame per property. Instead a request only marks the view dirty,
+ * and the render runs once the FX thread is done with the current event, so
+ * it sees every change made while handling it.
+ * <p>
+ * Only used on the JavaFX Application Thread.
+ */
+public class RenderScheduler {
+
+  private final Runnable render;
+  private boolean dirty;
+
+  // Requests so far, and how many of them were folded into an earlier one.
+  // Only written on the FX thread, volatile for the JMX metrics that read them
+  private volatile long requested;
+  private volatile long coalesced;
+
+  /** @param render Renders the current view, run on the FX thread */
+  public RenderScheduler(Runnable render) {
+    this.render = render;
+  }
+
+  /** Render the view once the current event is handled, unless a render is already due then */
+  public void request() {
+    this.requested++;
+    if (this.dirty) {
+      this.coalesced++;
+      return;
+    }
+    this.dirty = true;
+    Platform.runLater(() -> {
+      // Cleared first, so a request made by the render itself gets its own pulse
+      this.dirty = false;
+      this.render.run();
+    });
+  }
+
+  public long getRequested() {
+    return this.requested;
+  }
+
+  /** Renders avoided by folding their request into one already due */
+  public long getCoalesced() {
+    return this.coalesced;
+  }
+}
@@ -0,0 +1,94 @@
+package mandelbrotset.render;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageTypeSpecifier;
+import javax.imageio.ImageWriter;
+import javax.imageio.metadata.IIOInvalidTreeException;
+import javax.imageio.metadata.IIOMetadata;
+import javax.imageio.metadata.IIOMetadataNode;
+import javax.imageio.stream.ImageOutputStream;
+
+/**
+ * Writes frames to a looping animated GIF as they arrive, so only the
+ * current frame is ever held in memory. Uses the ImageIO GIF writer, which
+ * reduces each frame to its own 256 color palette.
+ */
+public class AnimatedGif implements SequenceRenderer.FrameSink, Closeable {
+
+  private static final String FORMAT = "javax_imageio_gif_image_1.0";
+
+  private final ImageWriter writer;
+  private final ImageOutputStream out;
+  // Hundredths of a second per frame, the unit GIF uses
+  private final int delay;
+  private boolean first = true;
+
+  /** @param fps Frames per second, GIF players round this to 100 / n */
+  public AnimatedGif(File file, double fps) throws IOException {
+    if (fps <= 0)
+      throw new IllegalArgumentException("Frame rate must be positive: " + fps);
+    Iterator<ImageWriter> writers = ImageIO.getImageWritersByFormatName("gif");
+    if (!writers.hasNext())
+      throw new IOException("No GIF writer available");
+    this.writer = writers.next();
+    file.delete();
+    this.out = ImageIO.createImageOutputStream(file);
+    if (this.out == null)
+      throw new IOException("Could not write " + file);
+    this.writer.setOutput(this.out);
+    this.writer.prepareWriteSequence(null);
+    this.delay = Math.max(1, (int) Math.round(100 / fps));
+  }
+
+  @Override
+  public void frame(int index, int[] argb, int size) throws IOException {
+    IIOImage image = new IIOImage(ImageFiles.toImage(argb, size, size), null, null);
+    image.setMetadata(metadata(image));
+    writer.writeToSequence(image, null);
+    first = false;
+  }
+
+  /** Frame delay, plus the loop forever extension on the first frame */
+  private IIOMetadata metadata(IIOImage image) throws IIOInvalidTreeException {
+    IIOMetadata meta = writer.getDefaultImageMetadata(
+        ImageTypeSpecifier.createFromRenderedImage(image.getRenderedImage()), null);
+    IIOMetadataNode root = new IIOMetadataNode(FORMAT);
+
+    IIOMetadataNode control = new IIOMetadataNode("GraphicControlExtension");
+    control.setAttribute("disposalMethod", "none");
+    control.setAttribute("userInputFlag", "FALSE");
+    control.setAttribute("transparentColorFlag", "FALSE");
+    control.setAttribute("delayTime", Integer.toString(delay));
+    control.setAttribute("transparentColorIndex", "0");
+    root.appendChild(control);
+
+    if (first) {
+      // NETSCAPE2.0 with a loop count of 0 repeats forever
+      IIOMetadataNode app = new IIOMetadataNode("ApplicationExtension");
+      app.setAttribute("applicationID", "NETSCAPE");
+      app.setAttribute("authenticationCode", "2.0");
+      app.setUserObject(new byte[] { 1, 0, 0 });
+      IIOMetadataNode apps = new IIOMetadataNode("ApplicationExtensions");
+      apps.appendChild(app);
+      root.appendChild(apps);
+    }
+    meta.mergeTree(FORMAT, root);
+    return meta;
+  }
+
+  @Override
+  public void close() throws IOException {
+    try {
+      writer.endWriteSequence();
+    } finally {
+      writer.dispose();
+      out.close();
+    }
+  }
+}
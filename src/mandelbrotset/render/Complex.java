@@ -1,4 +1,4 @@
-package mandelbrotset;
+package mandelbrotset.render;
 
 /** Complex number utility class for converting from polar to rectangular form */
 public class Complex {
@@ -0,0 +1,407 @@
+package mandelbrotset.render;
+
+import java.io.File;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Iteration counts of finished frames, kept on disk between runs so that
+ * going back to a view that was rendered before (the default view, a
+ * bookmark, a Julia angle) only costs reading it.
+ * <p>
+ * Views can have any center and radius, so there is no fixed tile grid to
+ * share between them. Instead every frame is one entry, keyed by everything
+ * its counts depend on: fractal, Julia angle, exact view, size, iteration
+ * limit, algorithm and precision. The kernels all give the same counts, so
+ * the kernel is not part of the key.
+ * <p>
+ * Each entry is a file holding its key and the counts, as shorts when
+ * maxIter allows it. The least recently used files are deleted once the
+ * directory grows over its size limit. A few of the most recent frames are
+ * also held in memory in front of it. Files are written on a background
+ * thread, so storing a frame costs the render no more than copying it.
+ * <p>
+ * Files are read and written in chunks rather than memory mapped. A mapping
+ * holds on to its file until it is garbage collected, and on Windows a file
+ * can't be moved or deleted while it does.
+ * <p>
+ * Thread safe. I/O errors are printed and treated as misses, a broken cache
+ * never stops a frame from rendering.
+ */
+public class CountCache {
+
+  // First bytes of every file, then the format version
+  private static final int MAGIC = 0x4d434e54;
+  private static final int VERSION = 1;
+  private static final String SUFFIX = ".counts";
+  private static final String TEMP_SUFFIX = ".tmp";
+  // Files are read and written through a buffer of this many bytes
+  private static final int CHUNK = 64 * 1024;
+  // Half written files older than this were left by a run that died
+  private static final long STALE_TEMP_MILLIS = 60 * 60 * 1000;
+  // Frames waiting for the writer thread at most, a full queue drops new ones
+  private static final int MAX_WRITES = 8;
+
+  private final File dir;
+  private final long maxBytes;
+  private final long maxMemoryBytes;
+
+  // Files by name, least recently used first
+  private final LinkedHashMap<String, Long> files = new LinkedHashMap<>(16, 0.75f, true);
+  private long diskBytes;
+
+  // The hot in-memory layer, least recently used first
+  private final LinkedHashMap<String, int[]> memory = new LinkedHashMap<>(16, 0.75f, true);
+  private long memoryBytes;
+
+  // Frames put() but not written yet, by key. Their files are written one
+  // at a time on a daemon thread, so rendering never waits for the disk. A
+  // write cut off when the JVM exits leaves a temp file for the next run to
+  // sweep up
+  private final HashMap<String, int[]> writes = new HashMap<>();
+  private final ExecutorService writer = Executors.newSingleThreadExecutor(r -> {
+    Thread t = new Thread(r, "Frame cache writer");
+    t.setDaemon(true);
+    return t;
+  });
+
+  // Lookups by how they were answered
+  private long memoryHits;
+  private long diskHits;
+  private long misses;
+
+  /**
+   * Use dir as the cache, creating it if needed. Files already in it count
+   * towards the limit, oldest first in line for eviction.
+   *
+   * @param maxBytes       Size limit of the directory
+   * @param maxMemoryBytes Size limit of the in-memory layer, 0 for none
+   */
+  public CountCache(File dir, long maxBytes, long maxMemoryBytes) throws IOException {
+    if (maxBytes <= 0 || maxMemoryBytes < 0)
+      throw new IllegalArgumentException("Cache sizes must be positive");
+    this.dir = dir;
+    this.maxBytes = maxBytes;
+    this.maxMemoryBytes = maxMemoryBytes;
+    Files.createDirectories(dir.toPath());
+
+    File[] temps = dir.listFiles((d, name) -> name.endsWith(TEMP_SUFFIX));
+    if (temps != null) {
+      for (File f : temps) {
+        if (System.currentTimeMillis() - f.lastModified() > STALE_TEMP_MILLIS)
+          f.delete();
+      }
+    }
+
+    File[] existing = dir.listFiles((d, name) -> name.endsWith(SUFFIX));
+    if (existing != null) {
+      List<File> byAge = new ArrayList<>(List.of(existing));
+      byAge.sort((a, b) -> Long.compare(a.lastModified(), b.lastModified()));
+      for (File f : byAge) {
+        files.put(f.getName(), f.length());
+        diskBytes += f.length();
+      }
+    }
+    evict();
+  }
+
+  /** The cache key of a frame. Two frames with equal keys have equal counts */
+  static String key(RenderParams p, RenderEngine.Algorithm algorithm) {
+    ViewState v = p.getView();
+    // However the view is written (0.5 or 0.50), it is the same frame
+    String view = plain(v.getCenterX()) + "," + plain(v.getCenterY()) + "," + plain(v.getRadius());
+    return (p.isJulia() ? "julia " + p.getJuliaAngle() : "mandelbrot") + " " + view + " " + p.getSize() + " "
+        + p.getMaxIter() + " " + algorithm + " " + RenderEngine.precisionFor(p);
+  }
+
+  private static String plain(BigDecimal d) {
+    return d.stripTrailingZeros().toPlainString();
+  }
+
+  /**
+   * Fill counts with the cached frame for these params, if there is one.
+   *
+   * @return true on a hit
+   */
+  public boolean get(RenderParams p, RenderEngine.Algorithm algorithm, int[] counts) {
+    String key = key(p, algorithm);
+    synchronized (this) {
+      int[] hot = memory.get(key);
+      if (hot == null)
+        hot = writes.get(key);
+      if (hot != null && hot.length == counts.length) {
+        System.arraycopy(hot, 0, counts, 0, counts.length);
+        memoryHits++;
+        return true;
+      }
+    }
+
+    String name = fileName(key);
+    synchronized (this) {
+      if (!files.containsKey(name)) {
+        misses++;
+        return false;
+      }
+    }
+    File file = new File(dir, name);
+    try {
+      if (!read(file, key, counts)) {
+        // Another key with the same hash, an old format or a cut off file
+        synchronized (this) {
+          misses++;
+        }
+        return false;
+      }
+    } catch (IOException e) {
+      System.err.println("Could not read cached frame " + file + ": " + e.getMessage());
+      synchronized (this) {
+        misses++;
+      }
+      return false;
+    }
+    file.setLastModified(System.currentTimeMillis());
+    synchronized (this) {
+      files.get(name);
+      remember(key, counts.clone());
+      diskHits++;
+    }
+    return true;
+  }
+
+  /**
+   * Store the counts of a finished frame. counts is copied, the caller keeps
+   * it. The file is written later on the writer thread, until then get()
+   * answers from the copy. Frames put while MAX_WRITES are already waiting
+   * are only kept in memory.
+   */
+  public void put(RenderParams p, RenderEngine.Algorithm algorithm, int[] counts) {
+    String key = key(p, algorithm);
+    String name = fileName(key);
+    int[] copy = counts.clone();
+    synchronized (this) {
+      remember(key, copy);
+      if (files.containsKey(name) || writes.containsKey(key) || writes.size() >= MAX_WRITES)
+        return;
+      writes.put(key, copy);
+    }
+    writer.execute(() -> write(key, name, copy, p.getMaxIter()));
+  }
+
+  /** Wait until the files of every frame put so far are written */
+  public void awaitWrites() throws InterruptedException {
+    try {
+      writer.submit(() -> {
+      }).get();
+    } catch (ExecutionException e) {
+      // Nothing to fail
+      throw new IllegalStateException(e);
+    }
+  }
+
+  /** Write the file of a frame put(), unless clear() dropped it first */
+  private void write(String key, String name, int[] counts, int maxIter) {
+    synchronized (this) {
+      if (writes.get(key) != counts)
+        return;
+    }
+    // Counts go up to maxIter + 1
+    boolean wide = maxIter + 1 > 0xffff;
+    byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+    long length = 4 + 4 + 4 + keyBytes.length + 4 + 1 + (long) counts.length * (wide ? 4 : 2);
+    File file = new File(dir, name);
+    File tmp = null;
+    try {
+      // A file of its own, another viewer may be writing the same frame
+      tmp = Files.createTempFile(dir.toPath(), name, TEMP_SUFFIX).toFile();
+      try (FileChannel ch = FileChannel.open(tmp.toPath(), StandardOpenOption.WRITE)) {
+        ByteBuffer buf = ByteBuffer.allocate(Math.max(CHUNK, 17 + keyBytes.length)).order(ByteOrder.LITTLE_ENDIAN);
+        buf.putInt(MAGIC).putInt(VERSION).putInt(keyBytes.length).put(keyBytes).putInt(counts.length);
+        buf.put((byte) (wide ? 1 : 0));
+        for (int c : counts) {
+          if (buf.remaining() < 4)
+            flush(ch, buf);
+          if (wide)
+            buf.putInt(c);
+          else
+            buf.putShort((short) c);
+        }
+        flush(ch, buf);
+      }
+      // Readers, also in other processes, only ever see complete files
+      Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    } catch (IOException e) {
+      System.err.println("Could not cache frame in " + file + ": " + e.getMessage());
+      if (tmp != null)
+        tmp.delete();
+      synchronized (this) {
+        writes.remove(key, counts);
+      }
+      return;
+    }
+    synchronized (this) {
+      if (!writes.remove(key, counts)) {
+        // Cleared while it was written
+        delete(name);
+        return;
+      }
+      Long old = files.put(name, length);
+      diskBytes += length - (old == null ? 0 : old);
+      evict();
+    }
+  }
+
+  /** Delete every cached frame. Files that can't be deleted stay in the count */
+  public synchronized void clear() {
+    memory.clear();
+    writes.clear();
+    memoryBytes = 0;
+    for (Iterator<Map.Entry<String, Long>> it = files.entrySet().iterator(); it.hasNext();) {
+      Map.Entry<String, Long> entry = it.next();
+      if (delete(entry.getKey())) {
+        diskBytes -= entry.getValue();
+        it.remove();
+      }
+    }
+  }
+
+  /** Bytes used on disk */
+  public synchronized long getDiskBytes() {
+    return diskBytes;
+  }
+
+  /** Lookups answered from the in-memory layer, or a frame still waiting to be written */
+  public synchronized long getMemoryHits() {
+    return memoryHits;
+  }
+
+  /** Lookups answered from a file */
+  public synchronized long getDiskHits() {
+    return diskHits;
+  }
+
+  /** Lookups that found nothing usable */
+  public synchronized long getMisses() {
+    return misses;
+  }
+
+  /**
+   * Read the counts of file into counts.
+   *
+   * @return false if the file isn't one for this key and this many counts, or is cut off
+   */
+  private static boolean read(File file, String key, int[] counts) throws IOException {
+    byte[] expected = key.getBytes(StandardCharsets.UTF_8);
+    try (FileChannel ch = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+      ByteBuffer buf = ByteBuffer.allocate(Math.max(CHUNK, 17 + expected.length)).order(ByteOrder.LITTLE_ENDIAN);
+      buf.flip();
+      if (!fill(ch, buf, 12) || buf.getInt() != MAGIC || buf.getInt() != VERSION || buf.getInt() != expected.length)
+        return false;
+      if (!fill(ch, buf, expected.length + 5))
+        return false;
+      byte[] keyBytes = new byte[expected.length];
+      buf.get(keyBytes);
+      if (!key.equals(new String(keyBytes, StandardCharsets.UTF_8)) || buf.getInt() != counts.length)
+        return false;
+
+      int bytes = buf.get() != 0 ? 4 : 2;
+      for (int i = 0; i < counts.length;) {
+        if (!fill(ch, buf, bytes))
+          return false;
+        int n = Math.min(counts.length - i, buf.remaining() / bytes);
+        if (bytes == 4) {
+          buf.asIntBuffer().get(counts, i, n);
+          buf.position(buf.position() + 4 * n);
+        } else {
+          for (int k = 0; k < n; k++)
+            counts[i + k] = buf.getShort() & 0xffff;
+        }
+        i += n;
+      }
+    }
+    return true;
+  }
+
+  /** Read from ch until buf holds at least n bytes, false if the file ends first */
+  private static boolean fill(FileChannel ch, ByteBuffer buf, int n) throws IOException {
+    buf.compact();
+    while (buf.position() < n) {
+      if (ch.read(buf) < 0)
+        break;
+    }
+    buf.flip();
+    return buf.remaining() >= n;
+  }
+
+  /** Write out and empty buf */
+  private static void flush(FileChannel ch, ByteBuffer buf) throws IOException {
+    buf.flip();
+    while (buf.hasRemaining())
+      ch.write(buf);
+    buf.clear();
+  }
+
+  /** Add to the in-memory layer, dropping the least recently used frames over its limit */
+  private void remember(String key, int[] counts) {
+    if (4L * counts.length > maxMemoryBytes)
+      return;
+    int[] old = memory.put(key, counts);
+    memoryBytes += 4L * counts.length - (old == null ? 0 : 4L * old.length);
+    for (Iterator<int[]> it = memory.values().iterator(); memoryBytes > maxMemoryBytes && it.hasNext();) {
+      memoryBytes -= 4L * it.next().length;
+      it.remove();
+    }
+  }
+
+  /**
+   * Delete the least recently used files until the directory fits its limit.
+   * Files that can't be deleted (open in another process, say) are skipped
+   * and still count
+   */
+  private void evict() {
+    for (Iterator<Map.Entry<String, Long>> it = files.entrySet().iterator(); diskBytes > maxBytes && it.hasNext();) {
+      Map.Entry<String, Long> oldest = it.next();
+      if (delete(oldest.getKey())) {
+        diskBytes -= oldest.getValue();
+        it.remove();
+      }
+    }
+  }
+
+  /** Delete a cache file, true if it is gone */
+  private boolean delete(String name) {
+    File f = new File(dir, name);
+    return f.delete() || !f.exists();
+  }
+
+  /** Keys hold arbitrarily long coordinates, so files are named by their hash */
+  private static String fileName(String key) {
+    try {
+      byte[] hash = MessageDigest.getInstance("SHA-256").digest(key.getBytes(StandardCharsets.UTF_8));
+      StringBuilder name = new StringBuilder();
+      for (int i = 0; i < 16; i++)
+        name.append(String.format("%02x", hash[i]));
+      return name.append(SUFFIX).toString();
+    } catch (NoSuchAlgorithmException e) {
+      // Every JVM has SHA-256
+      throw new IllegalStateException(e);
+    }
+  }
+}
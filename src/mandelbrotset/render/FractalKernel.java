@@ -0,0 +1,233 @@
+package mandelbrotset.render;
+
+/** The escape time algorithm, free of any UI code so it can run anywhere */
+public class FractalKernel {
+
+  private FractalKernel() {
+  }
+
+  /**
+   * The actual fractal algorithm implementation. Checks whether f(Z)=Z² + C
+   * converges when iterated where Z and C are complex numbers.
+   * <p>
+   * For the mandelbrot set, Z=0 initially, and C is our pixel.
+   * <p>
+   * For the Julia Set, Z is the pixel, and C is some arbitrary complex number of
+   * magnitude < 2. Different C values give different Julia Sets.
+   * <p>
+   * The math here calculates the imaginary and real parts individually, instead
+   * of using some sort of ComplexNumber object for maximum speed.
+   *
+   * @return the number of iterations before convergence. n <= maxIter + 1
+   * <p>
+   * Algorithm from
+   * https://en.wikipedia.org/wiki/Plotting_algorithms_for_the_Mandelbrot_set
+   */
+  public static int checkConvergence(double z, double zi, double c, double ci, int maxIter) {
+    // Initial complex number Z = (z + zi)
+
+    // Iteration counter
+    int iter = 0;
+
+    // |Z| must remain <= 2 in every iteration for point c to be
+    // in the prisoner set
+    while (z * z + zi * zi <= 4.0 && iter <= maxIter) {
+      // Calculate Re(z^2 + c)
+      double zT = z * z - zi * zi + c;
+      // Calculate Im(z^2 + c)
+      double ziT = 2 * z * zi + ci;
+      zi = ziT;
+      z = zT;
+      iter++;
+    }
+    return iter;
+  }
+
+  /**
+   * Iteration count for pixel (Px, Py) of a frame.
+   * <p>
+   * When calculating a mandelbrot set, Z starts at 0, and C changes per point.
+   * When calculating a julia set, Z is determined by the point, and C is the
+   * constant Julia parameter.
+   */
+  public static int iterate(RenderParams p, int Px, int Py) {
+    double fReal = p.toReal(Px);
+    double fIm = p.toIm(Py);
+    if (p.isJulia()) {
+      Complex k = p.getJuliaConstant();
+      return checkConvergence(fReal, fIm, k.getReal(), k.getIm(), p.getMaxIter());
+    }
+    return checkConvergence(0.0, 0.0, fReal, fIm, p.getMaxIter());
+  }
+
+  /**
+   * Same result as checkConvergence(0, 0, c, ci, maxIter), but faster for
+   * points inside the set, and records what it did in stats.
+   * <p>
+   * Points in the main cardioid and the period-2 bulb never escape, so they
+   * are answered with a closed form test instead of maxIter iterations.
+   * <p>
+   * Other orbits are checked for cycles with Brent's method: z is saved at
+   * power of two steps, and if it is ever reproduced *exactly* the orbit
+   * repeats forever without escaping. Exact equality (no tolerance) means the
+   * answer is always identical to running the full loop.
+   * <p>
+   * Algorithm from
+   * https://en.wikipedia.org/wiki/Plotting_algorithms_for_the_Mandelbrot_set#Cardioid_/_bulb_checking
+   */
+  public static int checkMandelbrot(double c, double ci, int maxIter, KernelStats stats) {
+    stats.pixels++;
+    if (inCardioidOrBulb(c, ci, stats)) {
+      stats.interior++;
+      return maxIter + 1;
+    }
+
+    double z = 0.0;
+    double zi = 0.0;
+    double oldZ = 0.0;
+    double oldZi = 0.0;
+    int period = 0;
+    int checkEvery = 1;
+
+    int iter = 0;
+    while (z * z + zi * zi <= 4.0 && iter <= maxIter) {
+      double zT = z * z - zi * zi + c;
+      double ziT = 2 * z * zi + ci;
+      zi = ziT;
+      z = zT;
+      iter++;
+
+      // Back at a point already seen, it will cycle forever
+      if (z == oldZ && zi == oldZi) {
+        stats.iterations += iter;
+        stats.periodic++;
+        stats.interior++;
+        return maxIter + 1;
+      }
+      // Brent's method: double the cycle length we look for each time
+      if (++period == checkEvery) {
+        period = 0;
+        checkEvery <<= 1;
+        oldZ = z;
+        oldZi = zi;
+      }
+    }
+    stats.iterations += iter;
+    if (iter > maxIter)
+      stats.interior++;
+    return iter;
+  }
+
+  /** Closed form test for the main cardioid and the period-2 bulb, whose points never escape */
+  private static boolean inCardioidOrBulb(double c, double ci, KernelStats stats) {
+    // Main cardioid
+    double q = (c - 0.25) * (c - 0.25) + ci * ci;
+    if (q * (q + (c - 0.25)) <= 0.25 * ci * ci) {
+      stats.cardioid++;
+      return true;
+    }
+    // Period-2 bulb, the circle of radius 1/4 around -1
+    if ((c + 1) * (c + 1) + ci * ci <= 0.0625) {
+      stats.bulb++;
+      return true;
+    }
+    return false;
+  }
+
+  /** checkMandelbrot() that leaves z in orbit like resume() does, so a higher limit can carry on from there */
+  public static int checkMandelbrot(double c, double ci, int maxIter, double[] orbit, KernelStats stats) {
+    if (inCardioidOrBulb(c, ci, stats)) {
+      stats.pixels++;
+      stats.interior++;
+      orbit[0] = orbit[1] = Double.NaN;
+      return maxIter + 1;
+    }
+    return resume(0.0, 0.0, c, ci, 0, maxIter, true, orbit, stats);
+  }
+
+  /**
+   * Carry on an orbit from z, reached after iter steps, up to maxIter. Takes
+   * exactly the steps checkConvergence() would, so the count is the one a
+   * run from the start gives. With cycles on, orbits are checked for cycles
+   * like checkMandelbrot() does.
+   *
+   * @param orbit Receives z after the last step if the orbit is still
+   *              bounded at maxIter, or NaN if it escaped or cycles forever
+   */
+  public static int resume(double z, double zi, double c, double ci, int iter, int maxIter, boolean cycles,
+      double[] orbit, KernelStats stats) {
+    stats.pixels++;
+    int start = iter;
+    double oldZ = z;
+    double oldZi = zi;
+    int period = 0;
+    int checkEvery = 1;
+
+    orbit[0] = orbit[1] = Double.NaN;
+    while (z * z + zi * zi <= 4.0 && iter <= maxIter) {
+      double zT = z * z - zi * zi + c;
+      double ziT = 2 * z * zi + ci;
+      zi = ziT;
+      z = zT;
+      iter++;
+
+      if (cycles) {
+        if (z == oldZ && zi == oldZi) {
+          stats.iterations += iter - start;
+          stats.periodic++;
+          stats.interior++;
+          return maxIter + 1;
+        }
+        if (++period == checkEvery) {
+          period = 0;
+          checkEvery <<= 1;
+          oldZ = z;
+          oldZi = zi;
+        }
+      }
+    }
+    stats.iterations += iter - start;
+    if (iter > maxIter) {
+      stats.interior++;
+      orbit[0] = z;
+      orbit[1] = zi;
+    }
+    return iter;
+  }
+
+  /** Plain kernel for pixel (Px, Py), counting into stats */
+  public static int iterate(RenderParams p, int Px, int Py, KernelStats stats) {
+    int steps = iterate(p, Px, Py);
+    stats.pixels++;
+    stats.iterations += steps;
+    if (steps > p.getMaxIter())
+      stats.interior++;
+    return steps;
+  }
+
+  /**
+   * Fastest exact kernel at any point of a frame, Px and Py in pixels but not
+   * necessarily whole ones. For samples inside a pixel.
+   */
+  public static int sample(RenderParams p, double Px, double Py, KernelStats stats) {
+    if (!p.isJulia())
+      return checkMandelbrot(p.toReal(Px), p.toIm(Py), p.getMaxIter(), stats);
+    Complex k = p.getJuliaConstant();
+    int steps = checkConvergence(p.toReal(Px), p.toIm(Py), k.getReal(), k.getIm(), p.getMaxIter());
+    stats.pixels++;
+    stats.iterations += steps;
+    if (steps > p.getMaxIter())
+      stats.interior++;
+    return steps;
+  }
+
+  /**
+   * Fastest exact kernel for pixel (Px, Py): the cardioid, bulb and cycle
+   * checks for the Mandelbrot set, the plain loop for Julia sets.
+   */
+  public static int iterateFast(RenderParams p, int Px, int Py, KernelStats stats) {
+    if (p.isJulia())
+      return iterate(p, Px, Py, stats);
+    return checkMandelbrot(p.toReal(Px), p.toIm(Py), p.getMaxIter(), stats);
+  }
+}
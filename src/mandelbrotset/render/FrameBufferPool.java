@@ -0,0 +1,45 @@
+package mandelbrotset.render;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+
+/**
+ * A small pool of reusable int[] ARGB frame buffers.
+ * <p>
+ * A 1900x1900 frame is over 14MB, so allocating one per render puts a lot of
+ * pressure on the garbage collector while the user scrolls. Buffers are
+ * handed out with acquire() and given back with release() once nothing writes
+ * to or reads from them anymore. A buffer that is never released is simply
+ * collected, so losing one is harmless.
+ */
+public class FrameBufferPool {
+
+  private final int capacity;
+  private final ArrayDeque<int[]> free = new ArrayDeque<>();
+
+  /** @param capacity Maximum number of idle buffers kept around */
+  public FrameBufferPool(int capacity) {
+    this.capacity = capacity;
+  }
+
+  /** Get a buffer of exactly this length, reusing an idle one if possible */
+  public synchronized int[] acquire(int length) {
+    for (Iterator<int[]> it = free.iterator(); it.hasNext();) {
+      int[] buffer = it.next();
+      if (buffer.length == length) {
+        it.remove();
+        return buffer;
+      }
+      // The frame size changed, old buffers are not coming back into use
+      it.remove();
+    }
+    return new int[length];
+  }
+
+  /** Return a buffer to the pool. The caller must not touch it afterwards */
+  public synchronized void release(int[] buffer) {
+    if (free.size() >= capacity)
+      free.removeFirst();
+    free.addLast(buffer);
+  }
+}
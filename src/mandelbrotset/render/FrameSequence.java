@@ -0,0 +1,62 @@
+package mandelbrotset.render;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+
+/**
+ * The frames of an animation: a sweep of the Julia angle, a zoom towards the
+ * center, or both at once. The first frame is the start view, the last one
+ * is at the end angle and radius, with the frames between evenly spaced.
+ * <p>
+ * The radius changes by the same factor every frame, so a zoom moves at a
+ * steady speed however deep it goes.
+ */
+public class FrameSequence {
+
+  private final RenderParams start;
+  private final int frames;
+  private final double angleTo;
+  private final double zoomPerFrame;
+
+  /**
+   * @param start    The first frame
+   * @param frames   Number of frames, at least 1
+   * @param angleTo  Julia angle of the last frame, ignored for the Mandelbrot set
+   * @param radiusTo Radius of the last frame
+   */
+  public FrameSequence(RenderParams start, int frames, double angleTo, BigDecimal radiusTo) {
+    if (frames < 1)
+      throw new IllegalArgumentException("Need at least one frame: " + frames);
+    if (radiusTo.signum() <= 0)
+      throw new IllegalArgumentException("Radius must be positive: " + radiusTo);
+    this.start = start;
+    this.frames = frames;
+    this.angleTo = angleTo;
+    // The whole zoom as one double is fine, it only has to stay within about 1e300
+    double zoom = radiusTo.divide(start.getView().getRadius(), MathContext.DECIMAL64).doubleValue();
+    this.zoomPerFrame = frames == 1 ? 1 : Math.pow(zoom, 1.0 / (frames - 1));
+  }
+
+  /** A sequence that only sweeps the Julia angle */
+  public FrameSequence(RenderParams start, int frames, double angleTo) {
+    this(start, frames, angleTo, start.getView().getRadius());
+  }
+
+  /** Params of frame i, 0 based */
+  public RenderParams frame(int i) {
+    if (i < 0 || i >= frames)
+      throw new IllegalArgumentException("No frame " + i + " in " + frames);
+    double t = frames == 1 ? 0 : (double) i / (frames - 1);
+    double angle = start.getJuliaAngle() + (angleTo - start.getJuliaAngle()) * t;
+    ViewState view = i == 0 ? start.getView() : start.getView().zoom(Math.pow(zoomPerFrame, i));
+    return new RenderParams(start.getSize(), view, start.getMaxIter(), start.isJulia(), angle);
+  }
+
+  public int getFrames() {
+    return this.frames;
+  }
+
+  public int getSize() {
+    return this.start.getSize();
+  }
+}
@@ -0,0 +1,40 @@
+package mandelbrotset.render;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.awt.image.DirectColorModel;
+import java.awt.image.Raster;
+import java.awt.image.WritableRaster;
+import java.io.File;
+import java.io.IOException;
+
+import javax.imageio.ImageIO;
+
+/** Writes int[] ARGB rasters to image files without going through JavaFX */
+public class ImageFiles {
+
+  private ImageFiles() {
+  }
+
+  /**
+   * Save an opaque ARGB raster as a PNG. The raster is wrapped, not copied.
+   *
+   * @param argb   Row-major pixels, width * height long
+   * @param width  Image width
+   * @param height Image height
+   * @param file   Destination file, overwritten if it exists
+   */
+  public static void writePng(int[] argb, int width, int height, File file) throws IOException {
+    if (!ImageIO.write(toImage(argb, width, height), "png", file))
+      throw new IOException("No PNG writer available");
+  }
+
+  /** An opaque RGB image backed by the raster itself, nothing is copied */
+  public static BufferedImage toImage(int[] argb, int width, int height) {
+    int[] masks = { 0xff0000, 0xff00, 0xff };
+    DataBufferInt buffer = new DataBufferInt(argb, width * height);
+    WritableRaster raster = Raster.createPackedRaster(buffer, width, height, width, masks, null);
+    DirectColorModel model = new DirectColorModel(24, masks[0], masks[1], masks[2]);
+    return new BufferedImage(model, raster, false, null);
+  }
+}
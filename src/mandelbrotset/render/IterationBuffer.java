@@ -0,0 +1,55 @@
+package mandelbrotset.render;
+
+/**
+ * Keeps the raw iteration counts of the last finished frame, together with
+ * the RenderParams they were computed for.
+ * <p>
+ * Colors only depend on these counts, so any change that leaves the params
+ * alone (colors, color mode) can be redrawn from here in a few milliseconds
+ * instead of iterating every pixel again.
+ * <p>
+ * Not thread safe. Only the thread that publishes frames should use it.
+ */
+public class IterationBuffer {
+
+  private RenderParams params;
+  private int[] counts;
+
+  /** true if the stored counts are exactly what a render of params would produce */
+  public boolean matches(RenderParams params) {
+    return this.params != null && this.params.equals(params);
+  }
+
+  /**
+   * Replace the stored frame. The buffer now owns counts.
+   *
+   * @return the previously stored counts, for reuse, or null
+   */
+  public int[] store(RenderParams params, int[] counts) {
+    int[] old = this.counts;
+    this.params = params;
+    this.counts = counts;
+    return old;
+  }
+
+  /** Forget the stored frame, returning its counts for reuse (or null) */
+  public int[] clear() {
+    return store(null, null);
+  }
+
+  /** Fill argb by coloring the stored counts. The palette must match the params' iteration count */
+  public void recolor(Palette palette, int[] argb) {
+    if (palette.getMaxIter() != params.getMaxIter())
+      throw new IllegalArgumentException(
+          "Palette built for " + palette.getMaxIter() + " iterations, frame has " + params.getMaxIter());
+    palette.colorize(counts, argb, 0, counts.length);
+  }
+
+  public RenderParams getParams() {
+    return this.params;
+  }
+
+  public int[] getCounts() {
+    return this.counts;
+  }
+}
@@ -0,0 +1,95 @@
+package mandelbrotset.render;
+
+/**
+ * Counters describing the work done by the escape time kernels.
+ * <p>
+ * Each tile counts into its own instance with plain fields, so the hot loop
+ * never touches shared memory, then adds it to its frame's counters once
+ * with add(). Frames are added to the engine's totals when they end.
+ */
+public class KernelStats {
+
+  /** Pixels whose count was computed (not filled in) */
+  long pixels;
+  /** Iterations of z = z² + c actually performed */
+  long iterations;
+  /** Anti-aliasing samples computed, on top of the pixels */
+  long supersamples;
+  /** Pixels and samples that never escaped (count maxIter + 1) */
+  long interior;
+  /** Mandelbrot pixels rejected by the main cardioid test */
+  long cardioid;
+  /** Mandelbrot pixels rejected by the period-2 bulb test */
+  long bulb;
+  /** Pixels that stopped early because their orbit was caught in a cycle */
+  long periodic;
+  /** Deep zoom pixels moved to another reference orbit, see PerturbationKernel */
+  long rebases;
+
+  /** Add another set of counters into this one */
+  public synchronized void add(KernelStats other) {
+    this.pixels += other.pixels;
+    this.supersamples += other.supersamples;
+    this.iterations += other.iterations;
+    this.interior += other.interior;
+    this.cardioid += other.cardioid;
+    this.bulb += other.bulb;
+    this.periodic += other.periodic;
+    this.rebases += other.rebases;
+  }
+
+  /** A consistent copy of the current values */
+  public synchronized KernelStats snapshot() {
+    KernelStats copy = new KernelStats();
+    copy.add(this);
+    return copy;
+  }
+
+  public synchronized void reset() {
+    this.pixels = this.supersamples = this.iterations = this.interior = 0;
+    this.cardioid = this.bulb = this.periodic = this.rebases = 0;
+  }
+
+  public synchronized long getPixels() {
+    return this.pixels;
+  }
+
+  public synchronized long getSupersamples() {
+    return this.supersamples;
+  }
+
+  public synchronized long getIterations() {
+    return this.iterations;
+  }
+
+  public synchronized long getInterior() {
+    return this.interior;
+  }
+
+  public synchronized long getCardioid() {
+    return this.cardioid;
+  }
+
+  public synchronized long getBulb() {
+    return this.bulb;
+  }
+
+  public synchronized long getPeriodic() {
+    return this.periodic;
+  }
+
+  public synchronized long getRebases() {
+    return this.rebases;
+  }
+
+  /** Pixels that skipped some or all of the maxIter loop */
+  public synchronized long getEarlyBailouts() {
+    return this.cardioid + this.bulb + this.periodic;
+  }
+
+  @Override
+  public synchronized String toString() {
+    return String.format("%d pixels, %d supersamples, %d iterations, %d interior, early bailouts: %d cardioid, %d bulb, %d periodic, %d rebases",
+        pixels, supersamples, iterations, interior, cardioid, bulb, periodic, rebases);
+  }
+}
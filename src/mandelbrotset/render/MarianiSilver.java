@@ -0,0 +1,119 @@
+package mandelbrotset.render;
+
+/**
+ * Mariani-Silver rectangle subdivision.
+ * <p>
+ * Only the border of a rectangle is iterated. If every border pixel has the
+ * same iteration count, the interior is filled with that count without
+ * iterating it. Otherwise the rectangle is cut in half along its longer side,
+ * the cut line is iterated, and both halves are checked the same way.
+ * <p>
+ * This works because the regions of equal iteration count of the Mandelbrot
+ * set (and of connected Julia sets) have no holes: a border that is all black
+ * cannot enclose anything that escapes. It pays off most in views with large
+ * areas of the set at high iteration counts, where every skipped pixel would
+ * have cost the full maxIter. A detail thinner than a pixel that lies entirely
+ * inside a uniform border can be missed, so the brute force path stays the
+ * default.
+ * <p>
+ * Algorithm from
+ * https://en.wikibooks.org/wiki/Fractals/Iterations_in_the_complex_plane/Mandelbrot_set/Mariani-Silver
+ */
+public class MarianiSilver {
+
+  // Rectangles with a side shorter than this are iterated pixel by pixel,
+  // checking their borders would cost about as much as the interior
+  private static final int MIN_SIDE = 4;
+
+  private MarianiSilver() {
+  }
+
+  /**
+   * Fill counts for the tile [x0, x1) x [y0, y1) of a frame.
+   *
+   * @param p      The frame being rendered
+   * @param counts Row-major iteration counts of the whole frame
+   * @param kernel Computes the iteration count of one pixel
+   */
+  public static void fill(RenderParams p, int[] counts, TileRenderer.PixelFunction kernel, int x0, int y0, int x1,
+      int y1) {
+    int size = p.getSize();
+    // Work with inclusive bounds from here on
+    int right = x1 - 1;
+    int bottom = y1 - 1;
+
+    // Iterate the border of the whole tile once
+    for (int Px = x0; Px <= right; Px++) {
+      counts[y0 * size + Px] = kernel.compute(Px, y0);
+      counts[bottom * size + Px] = kernel.compute(Px, bottom);
+    }
+    for (int Py = y0 + 1; Py < bottom; Py++) {
+      counts[Py * size + x0] = kernel.compute(x0, Py);
+      counts[Py * size + right] = kernel.compute(right, Py);
+    }
+    subdivide(p, counts, kernel, x0, y0, right, bottom);
+  }
+
+  /** Fill the interior of a rectangle whose border counts are already known. Bounds inclusive */
+  private static void subdivide(RenderParams p, int[] counts, TileRenderer.PixelFunction kernel, int x0, int y0,
+      int x1, int y1) {
+    int size = p.getSize();
+
+    // Nothing inside
+    if (x1 - x0 < 2 || y1 - y0 < 2)
+      return;
+
+    int uniform = uniformBorder(counts, size, x0, y0, x1, y1);
+    if (uniform >= 0) {
+      for (int Py = y0 + 1; Py < y1; Py++) {
+        int row = Py * size;
+        for (int Px = x0 + 1; Px < x1; Px++)
+          counts[row + Px] = uniform;
+      }
+      return;
+    }
+
+    if (x1 - x0 < MIN_SIDE || y1 - y0 < MIN_SIDE) {
+      for (int Py = y0 + 1; Py < y1; Py++) {
+        int row = Py * size;
+        for (int Px = x0 + 1; Px < x1; Px++)
+          counts[row + Px] = kernel.compute(Px, Py);
+      }
+      return;
+    }
+
+    // Cut along the longer side, iterate the cut, then recurse into both halves.
+    // The cut line becomes part of the border of each half
+    if (x1 - x0 >= y1 - y0) {
+      int mx = (x0 + x1) >>> 1;
+      for (int Py = y0 + 1; Py < y1; Py++)
+        counts[Py * size + mx] = kernel.compute(mx, Py);
+      subdivide(p, counts, kernel, x0, y0, mx, y1);
+      subdivide(p, counts, kernel, mx, y0, x1, y1);
+    } else {
+      int my = (y0 + y1) >>> 1;
+      int row = my * size;
+      for (int Px = x0 + 1; Px < x1; Px++)
+        counts[row + Px] = kernel.compute(Px, my);
+      subdivide(p, counts, kernel, x0, y0, x1, my);
+      subdivide(p, counts, kernel, x0, my, x1, y1);
+    }
+  }
+
+  /** The count shared by every border pixel of the rectangle, or -1 if they differ */
+  private static int uniformBorder(int[] counts, int size, int x0, int y0, int x1, int y1) {
+    int value = counts[y0 * size + x0];
+    int top = y0 * size;
+    int bottom = y1 * size;
+    for (int Px = x0; Px <= x1; Px++) {
+      if (counts[top + Px] != value || counts[bottom + Px] != value)
+        return -1;
+    }
+    for (int Py = y0 + 1; Py < y1; Py++) {
+      int row = Py * size;
+      if (counts[row + x0] != value || counts[row + x1] != value)
+        return -1;
+    }
+    return value;
+  }
+}
@@ -0,0 +1,128 @@
+package mandelbrotset.render;
+
+import java.util.Arrays;
+
+/**
+ * The counts of a frame plus where the orbits of its pixels that never
+ * escaped got to, so the same view at another iteration count costs only
+ * the difference.
+ * <p>
+ * Counts don't depend on the limit except for the pixels that hit it, so a
+ * lower limit is just the stored counts capped at it. A higher one carries
+ * on the orbits of the pixels at the limit from their last z, see
+ * RenderEngine.renderDeeper(). Orbits are kept in compact arrays, one entry
+ * per pixel at the limit that might still escape. Pixels in the cardioid or
+ * a cycle never escape and aren't listed, pixels whose z isn't known yet (a
+ * frame rendered the normal way) are listed with a NaN z and start over.
+ * <p>
+ * Counts are only as good as the frame the buffer started from. Those of a
+ * brute force render are exact at every limit, those of a frame that copied
+ * pixels from the one before (PixelReuse) or filled them in (boundary
+ * tracing) are not, and neither is anything made from them. See isExact().
+ * <p>
+ * Immutable, raising the limit makes a new one.
+ */
+public class OrbitBuffer {
+
+  private final RenderParams params;
+  private final int[] counts;
+  // Pixel index and z after maxIter + 1 steps of each listed orbit
+  private final int[] pixels;
+  private final double[] z;
+  private final double[] zi;
+  private final boolean exact;
+
+  OrbitBuffer(RenderParams params, int[] counts, int[] pixels, double[] z, double[] zi, boolean exact) {
+    this.params = params;
+    this.counts = counts;
+    this.exact = exact;
+    this.pixels = pixels;
+    this.z = z;
+    this.zi = zi;
+  }
+
+  /**
+   * Orbits of a finished frame, none of whose z is known yet. counts is
+   * copied.
+   *
+   * @param exact true if counts are what a brute force render of params
+   *              gives, not reused from another frame or filled in
+   */
+  public static OrbitBuffer of(RenderParams params, int[] counts, boolean exact) {
+    int limit = params.getMaxIter() + 1;
+    int n = 0;
+    for (int c : counts) {
+      if (c == limit)
+        n++;
+    }
+    int[] pixels = new int[n];
+    for (int i = 0, k = 0; i < counts.length; i++) {
+      if (counts[i] == limit)
+        pixels[k++] = i;
+    }
+    double[] unknown = new double[n];
+    Arrays.fill(unknown, Double.NaN);
+    return new OrbitBuffer(params, counts.clone(), pixels, unknown, unknown.clone(), exact);
+  }
+
+  /**
+   * true if p is the same view at another iteration count, and renderDeeper()
+   * can get there. Raising the limit needs the orbits in doubles, so deep
+   * zooms can only lower it.
+   */
+  public boolean canServe(RenderParams p) {
+    return canServe(this.params, p);
+  }
+
+  /** true if a frame of params rendered, then made into an OrbitBuffer, could serve p */
+  public static boolean canServe(RenderParams params, RenderParams p) {
+    if (!params.equals(new RenderParams(p.getSize(), p.getView(), params.getMaxIter(), p.isJulia(),
+        p.getJuliaAngle())))
+      return false;
+    return p.getMaxIter() <= params.getMaxIter() || RenderEngine.precisionFor(p) == RenderEngine.Precision.DOUBLE;
+  }
+
+  /** The counts at a limit no higher than this buffer's, into out */
+  void countsAt(int maxIter, int[] out) {
+    int limit = maxIter + 1;
+    for (int i = 0; i < counts.length; i++)
+      out[i] = Math.min(counts[i], limit);
+  }
+
+  public RenderParams getParams() {
+    return this.params;
+  }
+
+  public int getMaxIter() {
+    return this.params.getMaxIter();
+  }
+
+  /**
+   * true if the counts, and so the counts at any other limit, are what a
+   * brute force render gives
+   */
+  public boolean isExact() {
+    return this.exact;
+  }
+
+  int[] getCounts() {
+    return this.counts;
+  }
+
+  /** Number of orbits that may still escape at a higher limit */
+  public int getLength() {
+    return this.pixels.length;
+  }
+
+  int[] getPixels() {
+    return this.pixels;
+  }
+
+  double[] getZ() {
+    return this.z;
+  }
+
+  double[] getZi() {
+    return this.zi;
+  }
+}
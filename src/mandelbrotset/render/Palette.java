@@ -0,0 +1,176 @@
+package mandelbrotset.render;
+
+/**
+ * Maps iteration counts to ARGB pixel colors.
+ * <p>
+ * Colors are given as hue (degrees), saturation and brightness, the same
+ * values javafx.scene.paint.Color reports. The HSB to RGB conversion and the
+ * rounding to 8 bits follow JavaFX exactly, so the output is pixel for pixel
+ * what Color.hsb() drawn with a PixelWriter would give, without needing the
+ * JavaFX toolkit.
+ * <p>
+ * A color only depends on the iteration count, the two colors, the mode and
+ * the iteration limit, so every possible color is computed once up front into
+ * a lookup table. Coloring a pixel is then a single array index. Palettes are
+ * immutable; build a new one when any of those inputs change.
+ */
+public class Palette {
+
+  private final double hue1, sat1, bri1;
+  private final double hue2, sat2, bri2;
+  private final boolean psychedelic;
+  private final double maxIter;
+
+  // ARGB color for every count checkConvergence() can return, 0 to maxIter + 1
+  private final int[] lut;
+
+  /**
+   * @param hsb1        {hue, saturation, brightness} of color 1 (far from the set)
+   * @param hsb2        {hue, saturation, brightness} of color 2 (close to the set)
+   * @param psychedelic Use the psychedelic banding mode instead of a gradient
+   * @param maxIter     Iteration limit of the frame being colored
+   */
+  public Palette(double[] hsb1, double[] hsb2, boolean psychedelic, int maxIter) {
+    this.hue1 = hsb1[0];
+    this.sat1 = hsb1[1];
+    this.bri1 = hsb1[2];
+    this.hue2 = hsb2[0];
+    this.sat2 = hsb2[1];
+    this.bri2 = hsb2[2];
+    this.psychedelic = psychedelic;
+    this.maxIter = maxIter;
+
+    this.lut = new int[maxIter + 2];
+    for (int N = 0; N < lut.length; N++)
+      lut[N] = computeColor(N);
+  }
+
+  /**
+   * Color for an iteration count from 0 to maxIter + 1
+   *
+   * @return opaque ARGB color
+   */
+  public int pickColor(int N) {
+    return lut[N];
+  }
+
+  /** Color counts[from] up to counts[to] into argb, one table lookup per pixel */
+  public void colorize(int[] counts, int[] argb, int from, int to) {
+    int[] lut = this.lut;
+    for (int i = from; i < to; i++)
+      argb[i] = lut[counts[i]];
+  }
+
+  /** The iteration limit this palette was built for */
+  public int getMaxIter() {
+    return (int) this.maxIter;
+  }
+
+  /**
+   * Set the hue of each pixel based on the number of iterations completed. The
+   * range is set by user input. Two modes are given: Normal mode is a gradient
+   * from c1 -> c2. Psychedelic produces random looking well defined bands of
+   * color.
+   * <p>
+   * The pixel will be black if it is determined to be *in* the set
+   *
+   * @param N The iteration count to calculate color for
+   * @return opaque ARGB color
+   */
+  private int computeColor(int N) {
+
+    double hue;
+    double value;
+    double sat;
+
+    // Math is a bit ad-hoc for what looked good to me. Basically a function
+    // of convergence speed, i.e. the ratio between max iterations and actual
+    // iterations
+    // for this pixel
+    if (psychedelic) {
+      hue = hue1 * (maxIter / N);
+      value = (N < maxIter) ? 1.0 : 0.0;
+      sat = sat1;
+    } else {
+      hue = hue2 * (N / maxIter) + hue1 * (maxIter - N) / maxIter;
+      value = (N < maxIter) ? (bri1 + bri2) / 2.0 : 0.0;
+      sat = (sat1 + sat2) / 2.0;
+    }
+    return hsbToArgb(hue, sat, value);
+  }
+
+  /** Same conversion as javafx Color.hsb() followed by PixelWriter.setColor() */
+  public static int hsbToArgb(double hue, double saturation, double brightness) {
+    // normalize the hue
+    hue = (((hue % 360) + 360) % 360) / 360;
+
+    double r = 0, g = 0, b = 0;
+    if (saturation == 0) {
+      r = g = b = brightness;
+    } else {
+      double h = (hue - Math.floor(hue)) * 6.0;
+      double f = h - Math.floor(h);
+      double p = brightness * (1.0 - saturation);
+      double q = brightness * (1.0 - saturation * f);
+      double t = brightness * (1.0 - (saturation * (1.0 - f)));
+      switch ((int) h) {
+        case 0:
+          r = brightness; g = t; b = p;
+          break;
+        case 1:
+          r = q; g = brightness; b = p;
+          break;
+        case 2:
+          r = p; g = brightness; b = t;
+          break;
+        case 3:
+          r = p; g = q; b = brightness;
+          break;
+        case 4:
+          r = t; g = p; b = brightness;
+          break;
+        case 5:
+          r = brightness; g = p; b = q;
+          break;
+      }
+    }
+    // Color keeps its components as floats, so narrow them before rounding
+    return 0xff000000
+        | ((int) Math.round((float) r * 255.0) << 16)
+        | ((int) Math.round((float) g * 255.0) << 8)
+        | (int) Math.round((float) b * 255.0);
+  }
+
+  /**
+   * Hue (degrees), saturation and brightness of an RGB color, computed the way
+   * javafx Color does. Used by callers without a JavaFX Color at hand.
+   */
+  public static double[] rgbToHsb(int rgb) {
+    // Color keeps its components as floats
+    double r = (float) (((rgb >> 16) & 0xff) / 255.0);
+    double g = (float) (((rgb >> 8) & 0xff) / 255.0);
+    double b = (float) ((rgb & 0xff) / 255.0);
+
+    double cmax = Math.max(Math.max(r, g), b);
+    double cmin = Math.min(Math.min(r, g), b);
+
+    double brightness = cmax;
+    double saturation = (cmax != 0) ? (cmax - cmin) / cmax : 0;
+    double hue = 0;
+    if (saturation != 0) {
+      double redc = (cmax - r) / (cmax - cmin);
+      double greenc = (cmax - g) / (cmax - cmin);
+      double bluec = (cmax - b) / (cmax - cmin);
+      if (r == cmax)
+        hue = bluec - greenc;
+      else if (g == cmax)
+        hue = 2.0 + redc - bluec;
+      else
+        hue = 4.0 + greenc - redc;
+      hue = hue / 6.0;
+      if (hue < 0)
+        hue = hue + 1.0;
+    }
+    return new double[] { hue * 360, saturation, brightness };
+  }
+}
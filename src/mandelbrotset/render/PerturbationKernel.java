@@ -0,0 +1,164 @@
+package mandelbrotset.render;
+
+import java.math.BigDecimal;
+
+/**
+ * Escape time kernel for views zoomed in further than doubles can resolve.
+ * <p>
+ * Below a pixel size of about 1e-13 neighbouring pixels get rounded to the
+ * same double, and the image falls apart into blocks. Instead, one reference
+ * orbit Z is computed in high precision at the view center (ReferenceOrbit,
+ * double-double down to 1e-28, BigDecimal beyond),
+ * and every pixel only iterates its small difference dz from that orbit in
+ * plain doubles:
+ * <p>
+ * dz' = 2·Z·dz + dz² + dc
+ * <p>
+ * where dc is the pixel's offset from the center (0 for Julia sets, where dz
+ * starts at the offset instead). Small numbers keep their precision in floating
+ * point, so dz stays accurate where z itself would not.
+ * <p>
+ * A pixel "glitches" when its full value z = Z + dz gets smaller than dz: its
+ * orbit then went somewhere the reference didn't, and dz no longer holds
+ * enough information. Such pixels, and pixels that outlive the reference,
+ * are rebased: they continue from z itself against the orbit of 0, which is
+ * where every orbit gets close to. For the Mandelbrot set that is the
+ * reference orbit itself. This needs no second pass and no extra reference
+ * points, and gives the same counts as an exact computation up to rounding.
+ * <p>
+ * Algorithm from
+ * https://en.wikipedia.org/wiki/Plotting_algorithms_for_the_Mandelbrot_set#Perturbation_theory_and_series_approximation
+ * (rebasing as described by Zhuoran on fractalforums.org)
+ */
+public class PerturbationKernel {
+
+  private final RenderParams params;
+  private final ReferenceOrbit reference;
+  // The orbit of 0, pixels continue on it after a rebase
+  private final ReferenceOrbit critical;
+
+  /**
+   * @param reference Orbit from the view center, see referenceFor()
+   * @param critical  Orbit from 0, see criticalFor(). The same as reference for
+   *                  the Mandelbrot set
+   */
+  public PerturbationKernel(RenderParams params, ReferenceOrbit reference, ReferenceOrbit critical) {
+    this.params = params;
+    this.reference = reference;
+    this.critical = critical;
+  }
+
+  /**
+   * Reference orbit for a frame, from its view center
+   *
+   * @param old The reference orbit of the frame before, returned as is if it
+   *            still fits, or null
+   */
+  public static ReferenceOrbit referenceFor(RenderParams p, ReferenceOrbit old) {
+    BigDecimal x = p.getView().getCenterX();
+    BigDecimal y = p.getView().getCenterY();
+    if (p.isJulia()) {
+      BigDecimal kr = new BigDecimal(p.getJuliaConstant().getReal());
+      BigDecimal ki = new BigDecimal(p.getJuliaConstant().getIm());
+      return orbit(x, y, kr, ki, p, old);
+    }
+    return orbit(BigDecimal.ZERO, BigDecimal.ZERO, x, y, p, old);
+  }
+
+  /**
+   * Orbit of 0 for a frame, where glitched pixels continue
+   *
+   * @param reference The frame's reference orbit, which is also its orbit of
+   *                  0 for the Mandelbrot set
+   * @param old       The orbit of 0 of the frame before, returned as is if it
+   *                  still fits, or null
+   */
+  public static ReferenceOrbit criticalFor(RenderParams p, ReferenceOrbit reference, ReferenceOrbit old) {
+    if (!p.isJulia())
+      return reference;
+    BigDecimal kr = new BigDecimal(p.getJuliaConstant().getReal());
+    BigDecimal ki = new BigDecimal(p.getJuliaConstant().getIm());
+    return orbit(BigDecimal.ZERO, BigDecimal.ZERO, kr, ki, p, old);
+  }
+
+  private static ReferenceOrbit orbit(BigDecimal zx, BigDecimal zy, BigDecimal cx, BigDecimal cy, RenderParams p,
+      ReferenceOrbit old) {
+    int digits = ReferenceOrbit.digitsFor(p);
+    if (old != null && old.matches(zx, zy, cx, cy, p.getMaxIter(), digits))
+      return old;
+    return new ReferenceOrbit(zx, zy, cx, cy, p.getMaxIter(), digits);
+  }
+
+  public ReferenceOrbit getReference() {
+    return this.reference;
+  }
+
+  public ReferenceOrbit getCritical() {
+    return this.critical;
+  }
+
+  /** Iteration count for pixel (Px, Py), the same one checkConvergence() would give with exact math */
+  public int iterate(int Px, int Py, KernelStats stats) {
+    int size = this.params.getSize();
+    double radius = this.params.getRadius();
+
+    // Offset from the view center, never rounded against the center itself
+    return iterateOffset((2.0 * Px - size) * radius / size, (2.0 * Py - size) * radius / size, stats);
+  }
+
+  /** Iteration count for the point (ox, oy) away from the view center */
+  public int iterateOffset(double ox, double oy, KernelStats stats) {
+    int maxIter = this.params.getMaxIter();
+    double dz, dzi, dc, dci;
+    if (this.params.isJulia()) {
+      dz = ox;
+      dzi = oy;
+      dc = dci = 0.0;
+    } else {
+      dz = dzi = 0.0;
+      dc = ox;
+      dci = oy;
+    }
+
+    double[] re = this.reference.re();
+    double[] im = this.reference.im();
+    int last = re.length - 1;
+    int m = 0;
+
+    int iter = 0;
+    while (iter <= maxIter) {
+      double z = re[m] + dz;
+      double zi = im[m] + dzi;
+      double mag = z * z + zi * zi;
+      // |Z| must remain <= 2, same as checkConvergence()
+      if (mag > 4.0)
+        break;
+
+      // Glitched, or out of reference: carry on from z against the orbit of 0
+      if (mag < dz * dz + dzi * dzi || m == last) {
+        re = this.critical.re();
+        im = this.critical.im();
+        last = re.length - 1;
+        m = 0;
+        dz = z;
+        dzi = zi;
+        stats.rebases++;
+      }
+
+      // dz' = 2·Z·dz + dz² + dc
+      double zr = re[m];
+      double zim = im[m];
+      double dzT = 2 * (zr * dz - zim * dzi) + (dz * dz - dzi * dzi) + dc;
+      dzi = 2 * (zr * dzi + zim * dz) + 2 * dz * dzi + dci;
+      dz = dzT;
+      m++;
+      iter++;
+    }
+
+    stats.pixels++;
+    stats.iterations += iter;
+    if (iter > maxIter)
+      stats.interior++;
+    return iter;
+  }
+}
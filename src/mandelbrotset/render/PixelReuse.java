@@ -0,0 +1,139 @@
+package mandelbrotset.render;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.math.RoundingMode;
+
+/**
+ * Which pixels of a new frame were already computed for the previous one.
+ * <p>
+ * After a pan by whole pixels, or a zoom by exactly 2 around the same
+ * center, the pixel grid of the new frame lines up with the old one: a pan
+ * keeps everything but the newly exposed strips, a 2x zoom in keeps every
+ * other pixel in both directions, a 2x zoom out keeps the middle quarter at
+ * every other pixel. Those counts are copied instead of iterated.
+ * <p>
+ * Pixels line up to well under a millionth of a pixel (see ViewState), not
+ * bit for bit, so a reused count can differ from a fresh render where a
+ * point sits exactly on an iteration band border. The same few pixels a
+ * kernel change could flip.
+ */
+public class PixelReuse {
+
+  // ViewState rounds pan results far below this
+  private static final BigDecimal TOLERANCE = new BigDecimal("1E-6");
+
+  private final int size;
+  // Old column / row for each new one, or -1
+  private final int[] oldX;
+  private final int[] oldY;
+  // The same view, every count is copied to where it was
+  private final boolean identity;
+
+  private PixelReuse(int size, int[] oldX, int[] oldY, boolean identity) {
+    this.size = size;
+    this.oldX = oldX;
+    this.oldY = oldY;
+    this.identity = identity;
+  }
+
+  /**
+   * The pixels of now that old already has, or null if the grids don't line
+   * up (different size, iterations or fractal, or not a whole pixel pan or 2x
+   * zoom)
+   */
+  public static PixelReuse between(RenderParams old, RenderParams now) {
+    int size = now.getSize();
+    if (old.getSize() != size || old.getMaxIter() != now.getMaxIter() || old.isJulia() != now.isJulia()
+        || (now.isJulia() && Double.compare(old.getJuliaAngle(), now.getJuliaAngle()) != 0))
+      return null;
+
+    // New radius as a fraction p / q of the old one
+    BigDecimal rOld = old.getView().getRadius();
+    BigDecimal rNew = now.getView().getRadius();
+    int p, q;
+    if (rNew.compareTo(rOld) == 0) {
+      p = q = 1;
+    } else if (rNew.multiply(BigDecimal.valueOf(2)).compareTo(rOld) == 0) {
+      p = 1;
+      q = 2;
+    } else if (rNew.compareTo(rOld.multiply(BigDecimal.valueOf(2))) == 0) {
+      p = 2;
+      q = 1;
+    } else {
+      return null;
+    }
+
+    int[] oldX = axis(old.getView().getCenterX(), now.getView().getCenterX(), rOld, size, p, q);
+    int[] oldY = oldX == null ? null : axis(old.getView().getCenterY(), now.getView().getCenterY(), rOld, size, p, q);
+    if (oldY == null)
+      return null;
+    boolean identity = p == q && now.getView().getCenterX().compareTo(old.getView().getCenterX()) == 0
+        && now.getView().getCenterY().compareTo(old.getView().getCenterY()) == 0;
+    return new PixelReuse(size, oldX, oldY, identity);
+  }
+
+  /**
+   * Old pixel for every new one along one axis. New pixel X is at
+   * (2X - size) / size * rNew + cNew, old pixel Y at (2Y - size) / size * rOld + cOld.
+   * With rNew = rOld * p / q and the centers k whole old pixels apart, they
+   * are the same point when 2q·Y = p·(2X - size) + q·(size + 2k).
+   */
+  private static int[] axis(BigDecimal cOld, BigDecimal cNew, BigDecimal rOld, int size, int p, int q) {
+    // The center shift in old pixels, must be a whole number
+    BigDecimal shift = cNew.subtract(cOld).multiply(BigDecimal.valueOf(size))
+        .divide(rOld.multiply(BigDecimal.valueOf(2)), MathContext.DECIMAL64);
+    BigDecimal k = shift.setScale(0, RoundingMode.HALF_EVEN);
+    if (shift.subtract(k).abs().compareTo(TOLERANCE) > 0 || k.abs().compareTo(BigDecimal.valueOf(size)) >= 0)
+      return null;
+    long shiftPixels = k.longValue();
+
+    int[] map = new int[size];
+    boolean any = false;
+    for (int X = 0; X < size; X++) {
+      long twoQY = (long) p * (2L * X - size) + (long) q * (size + 2 * shiftPixels);
+      map[X] = -1;
+      if (twoQY % (2 * q) == 0) {
+        long Y = twoQY / (2 * q);
+        if (Y >= 0 && Y < size) {
+          map[X] = (int) Y;
+          any = true;
+        }
+      }
+    }
+    return any ? map : null;
+  }
+
+  /**
+   * true if the new frame is exactly the old view (a recolor, or anti
+   * aliasing turned on), so every count is copied unchanged and is as exact
+   * as the old frame's
+   */
+  public boolean isIdentity() {
+    return this.identity;
+  }
+
+  /** true if pixel (Px, Py) of the new frame is copied from the old one */
+  public boolean isKnown(int Px, int Py) {
+    return oldX[Px] >= 0 && oldY[Py] >= 0;
+  }
+
+  /** true if no pixel of row Py is copied */
+  public boolean isNewRow(int Py) {
+    return oldY[Py] < 0;
+  }
+
+  /** Copy the reused counts of rows y0 to y1 (exclusive) from the old frame into counts */
+  public void copy(int[] oldCounts, int[] counts, int x0, int y0, int x1, int y1) {
+    for (int Py = y0; Py < y1; Py++) {
+      if (oldY[Py] < 0)
+        continue;
+      int row = Py * size;
+      int from = oldY[Py] * size;
+      for (int Px = x0; Px < x1; Px++) {
+        if (oldX[Px] >= 0)
+          counts[row + Px] = oldCounts[from + oldX[Px]];
+      }
+    }
+  }
+}
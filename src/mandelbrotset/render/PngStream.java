@@ -0,0 +1,143 @@
+package mandelbrotset.render;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Writes an RGB PNG a few rows at a time, for images far too big to hold in
+ * memory (ImageIO needs the whole image up front). Only the previous row is
+ * kept, every row goes straight through the compressor to the file.
+ * <p>
+ * Rows use the Paeth filter, which suits the smooth gradients and flat areas
+ * of fractals well. Format from https://www.w3.org/TR/png/
+ */
+public class PngStream implements Closeable {
+
+  private static final byte[] SIGNATURE = { (byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1a, '\n' };
+  private static final int PAETH = 4;
+
+  private final DataOutputStream out;
+  private final int width;
+  private final int height;
+  private int written;
+
+  private final Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION);
+  private final byte[] compressed = new byte[64 * 1024];
+  private final CRC32 crc = new CRC32();
+
+  // The filter works on the bytes of this row and the one before
+  private byte[] row;
+  private byte[] previous;
+  private final byte[] filtered;
+
+  /** Start a width x height PNG, overwriting file */
+  public PngStream(File file, int width, int height) throws IOException {
+    if (width <= 0 || height <= 0)
+      throw new IllegalArgumentException("Image size must be positive: " + width + "x" + height);
+    this.width = width;
+    this.height = height;
+    this.row = new byte[3 * width];
+    this.previous = new byte[3 * width];
+    this.filtered = new byte[1 + 3 * width];
+
+    this.out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 64 * 1024));
+    out.write(SIGNATURE);
+    byte[] header = new byte[13];
+    putInt(header, 0, width);
+    putInt(header, 4, height);
+    header[8] = 8; // bits per channel
+    header[9] = 2; // RGB
+    // Compression, filter and interlace methods all 0
+    chunk("IHDR", header, header.length);
+  }
+
+  /** Write the next rows, from argb starting at offset, width pixels per row */
+  public void writeRows(int[] argb, int offset, int rows) throws IOException {
+    if (written + rows > height)
+      throw new IllegalArgumentException("Image only has " + height + " rows");
+    for (int r = 0; r < rows; r++) {
+      int at = offset + r * width;
+      for (int x = 0; x < width; x++) {
+        int c = argb[at + x];
+        row[3 * x] = (byte) (c >> 16);
+        row[3 * x + 1] = (byte) (c >> 8);
+        row[3 * x + 2] = (byte) c;
+      }
+      filter();
+      deflater.setInput(filtered);
+      while (!deflater.needsInput())
+        flushCompressed();
+
+      byte[] t = previous;
+      previous = row;
+      row = t;
+      written++;
+    }
+  }
+
+  /** Paeth filter row against previous into filtered */
+  private void filter() {
+    filtered[0] = PAETH;
+    for (int i = 0; i < row.length; i++) {
+      int a = i >= 3 ? row[i - 3] & 0xff : 0;
+      int b = previous[i] & 0xff;
+      int c = i >= 3 ? previous[i - 3] & 0xff : 0;
+      int p = a + b - c;
+      int pa = Math.abs(p - a);
+      int pb = Math.abs(p - b);
+      int pc = Math.abs(p - c);
+      int predicted = (pa <= pb && pa <= pc) ? a : (pb <= pc ? b : c);
+      filtered[i + 1] = (byte) (row[i] - predicted);
+    }
+  }
+
+  /** Write whatever the compressor has ready as an IDAT chunk */
+  private void flushCompressed() throws IOException {
+    int n = deflater.deflate(compressed);
+    if (n > 0)
+      chunk("IDAT", compressed, n);
+  }
+
+  private void chunk(String type, byte[] data, int length) throws IOException {
+    byte[] name = type.getBytes(StandardCharsets.US_ASCII);
+    crc.reset();
+    crc.update(name);
+    crc.update(data, 0, length);
+    out.writeInt(length);
+    out.write(name);
+    out.write(data, 0, length);
+    out.writeInt((int) crc.getValue());
+  }
+
+  private static void putInt(byte[] b, int at, int v) {
+    b[at] = (byte) (v >>> 24);
+    b[at + 1] = (byte) (v >>> 16);
+    b[at + 2] = (byte) (v >>> 8);
+    b[at + 3] = (byte) v;
+  }
+
+  /** Finish the file. Fails if fewer rows were written than the image has */
+  @Override
+  public void close() throws IOException {
+    try {
+      if (written == height) {
+        deflater.finish();
+        while (!deflater.finished())
+          flushCompressed();
+        chunk("IEND", new byte[0], 0);
+      }
+    } finally {
+      deflater.end();
+      out.close();
+    }
+    if (written != height)
+      throw new IOException("Image incomplete, " + written + " of " + height + " rows written");
+  }
+}
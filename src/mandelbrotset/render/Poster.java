@@ -0,0 +1,128 @@
+package mandelbrotset.render;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Renders images of any size straight to a PNG file, for prints of 20000
+ * pixels and more.
+ * <p>
+ * The image is rendered in bands of rows (see RenderEngine.renderBand()) that
+ * are handed to a PngStream as they finish, so memory only ever holds two
+ * bands: one being rendered on every core while the other is compressed on a
+ * separate thread. A band is about 16MB however big the image is.
+ */
+public class Poster {
+
+  // Pixels per band, rounded to whole tiles
+  private static final int BAND_PIXELS = 1 << 21;
+
+  private Poster() {
+  }
+
+  /** Rows per band for a frame of this size */
+  static int bandRows(int size) {
+    int rows = Math.max(1, BAND_PIXELS / size / TileRenderer.TILE_SIZE) * TileRenderer.TILE_SIZE;
+    return Math.min(rows, size);
+  }
+
+  /**
+   * Render params into a PNG file, blocking until it is written or the
+   * monitor cancels. The monitor's tileDone() reports finished rows out of
+   * the image height.
+   *
+   * @return true if the image is complete. A cancelled image is deleted
+   */
+  public static boolean render(RenderEngine engine, RenderParams params, Palette palette, File file,
+      TileRenderer.Monitor monitor) throws IOException {
+    return render(engine, params, palette, file, monitor, bandRows(params.getSize()));
+  }
+
+  /** Like render(), in bands of the given number of rows */
+  static boolean render(RenderEngine engine, RenderParams params, Palette palette, File file,
+      TileRenderer.Monitor monitor, int rows) throws IOException {
+    int size = params.getSize();
+    int[][] counts = { new int[size * rows], new int[size * rows] };
+    int[][] argb = { new int[size * rows], new int[size * rows] };
+
+    ExecutorService encoder = Executors.newSingleThreadExecutor(r -> {
+      Thread t = new Thread(r, "Poster encoder");
+      t.setDaemon(true);
+      return t;
+    });
+    PngStream png = new PngStream(file, size, size);
+    boolean finished = false;
+    try {
+      Future<?> previous = null;
+      for (int y0 = 0, band = 0; y0 < size; y0 += rows, band ^= 1) {
+        int n = Math.min(rows, size - y0);
+        if (!engine.renderBand(params, palette, y0, n, counts[band], argb[band], bandMonitor(monitor, y0, n, size)))
+          return false;
+        // The encoder must be done with the other buffer before it gets this one
+        finish(previous);
+        int[] done = argb[band];
+        previous = encoder.submit(() -> {
+          png.writeRows(done, 0, n);
+          return null;
+        });
+      }
+      finish(previous);
+      finished = true;
+    } finally {
+      encoder.shutdown();
+      if (finished) {
+        png.close();
+      } else {
+        // Let a band still being written finish before the file goes
+        try {
+          encoder.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+        try {
+          png.close();
+        } catch (IOException e) {
+          // Incomplete, it is deleted anyway
+        }
+        file.delete();
+      }
+    }
+    return true;
+  }
+
+  /** Reports the tiles of a band as rows of the whole image */
+  private static TileRenderer.Monitor bandMonitor(TileRenderer.Monitor monitor, int y0, int rows, int height) {
+    return new TileRenderer.Monitor() {
+      @Override
+      public boolean isCancelled() {
+        return monitor.isCancelled();
+      }
+
+      @Override
+      public void tileDone(int done, int total) {
+        monitor.tileDone(y0 + (int) ((long) rows * done / total), height);
+      }
+    };
+  }
+
+  /** Wait for a band to be written, rethrowing what the encoder threw */
+  private static void finish(Future<?> band) throws IOException {
+    if (band == null)
+      return;
+    try {
+      band.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted", e);
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof IOException)
+        throw (IOException) e.getCause();
+      throw new IOException(e.getCause());
+    }
+  }
+}
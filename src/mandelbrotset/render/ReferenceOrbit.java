@@ -0,0 +1,204 @@
+package mandelbrotset.render;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.util.Arrays;
+
+/**
+ * One orbit of z = z² + c, computed at high precision (double-double or
+ * BigDecimal) and stored as doubles.
+ * <p>
+ * The orbit values themselves never get much bigger than 2, so a double holds
+ * each of them just fine. What doubles can't hold at deep zooms is the tiny
+ * difference between neighbouring pixels, and PerturbationKernel keeps track
+ * of that part separately.
+ */
+public class ReferenceOrbit {
+
+  private static final BigDecimal TWO = BigDecimal.valueOf(2);
+
+  /**
+   * Decimal digits double-double arithmetic holds. Enough for pixels down to
+   * about 1e-28
+   */
+  public static final int DOUBLE_DOUBLE_DIGITS = 31;
+
+  // Smallest pixel a double-double orbit resolves, about 1000 ulps of a
+  // double-double 2
+  private static final double DOUBLE_DOUBLE_MIN_PIXEL = Math.ulp(2.0) * Math.ulp(1.0) * 1024;
+
+  private final double[] re;
+  private final double[] im;
+
+  // What the orbit was computed for, so it can be reused
+  private final BigDecimal startX;
+  private final BigDecimal startY;
+  private final BigDecimal cX;
+  private final BigDecimal cY;
+  private final int maxIter;
+  private final int digits;
+
+  /**
+   * Iterate from z = (startX, startY) until it escapes or maxIter + 1 steps
+   * are done.
+   *
+   * @param digits Significant decimal digits kept in every step. Up to
+   *               DOUBLE_DOUBLE_DIGITS the orbit is computed in double-double
+   *               arithmetic, which is much faster than BigDecimal
+   */
+  public ReferenceOrbit(BigDecimal startX, BigDecimal startY, BigDecimal cX, BigDecimal cY, int maxIter,
+      int digits) {
+    this.startX = startX;
+    this.startY = startY;
+    this.cX = cX;
+    this.cY = cY;
+    this.maxIter = maxIter;
+    this.digits = digits;
+
+    double[][] orbit = digits <= DOUBLE_DOUBLE_DIGITS ? iterateDoubleDouble() : iterateBigDecimal();
+    this.re = orbit[0];
+    this.im = orbit[1];
+  }
+
+  private double[][] iterateBigDecimal() {
+    MathContext mc = new MathContext(this.digits);
+    double[] re = new double[Math.min(maxIter + 2, 1024)];
+    double[] im = new double[re.length];
+    BigDecimal z = startX;
+    BigDecimal zi = startY;
+    int n = 0;
+    while (true) {
+      if (n == re.length) {
+        re = grow(re);
+        im = grow(im);
+      }
+      double x = z.doubleValue();
+      double y = zi.doubleValue();
+      re[n] = x;
+      im[n] = y;
+      n++;
+      // Same stop condition as FractalKernel.checkConvergence(). The escaped
+      // value is kept too, a pixel may still need it
+      if (x * x + y * y > 4.0 || n > maxIter + 1)
+        break;
+      BigDecimal zT = z.multiply(z, mc).subtract(zi.multiply(zi, mc), mc).add(cX, mc);
+      zi = TWO.multiply(z).multiply(zi, mc).add(cY, mc);
+      z = zT;
+    }
+    return new double[][] { Arrays.copyOf(re, n), Arrays.copyOf(im, n) };
+  }
+
+  /**
+   * The same orbit with every number held as an unevaluated sum hi + lo of two
+   * doubles, about 106 bits. Math.fma() gives the exact rounding error of a
+   * product and the "two-sum" trick that of a sum, so only double operations
+   * are needed.
+   * <p>
+   * Algorithm from T. J. Dekker, "A floating-point technique for extending the
+   * available precision" (1971), as in the QD library by Hida, Li and Bailey.
+   */
+  private double[][] iterateDoubleDouble() {
+    double[] re = new double[Math.min(maxIter + 2, 1024)];
+    double[] im = new double[re.length];
+
+    // The exact BigDecimal inputs, split into hi + lo
+    double z = startX.doubleValue();
+    double zLo = startX.subtract(new BigDecimal(z)).doubleValue();
+    double zi = startY.doubleValue();
+    double ziLo = startY.subtract(new BigDecimal(zi)).doubleValue();
+    double c = cX.doubleValue();
+    double cLo = cX.subtract(new BigDecimal(c)).doubleValue();
+    double ci = cY.doubleValue();
+    double ciLo = cY.subtract(new BigDecimal(ci)).doubleValue();
+
+    int n = 0;
+    while (true) {
+      if (n == re.length) {
+        re = grow(re);
+        im = grow(im);
+      }
+      re[n] = z;
+      im[n] = zi;
+      n++;
+      if (z * z + zi * zi > 4.0 || n > maxIter + 1)
+        break;
+
+      // z², exact product of the hi parts plus the cross terms
+      double p = z * z;
+      double e = Math.fma(z, z, -p) + 2 * z * zLo;
+      double zz = p + e;
+      double zzLo = e - (zz - p);
+      // zi²
+      p = zi * zi;
+      e = Math.fma(zi, zi, -p) + 2 * zi * ziLo;
+      double ii = p + e;
+      double iiLo = e - (ii - p);
+      // z·zi
+      p = z * zi;
+      e = Math.fma(z, zi, -p) + (z * ziLo + zLo * zi);
+      double zzi = p + e;
+      double zziLo = e - (zzi - p);
+
+      // Re(z² + c) = z² - zi² + c, two two-sums
+      double s = zz - ii;
+      double bb = s - zz;
+      e = (zz - (s - bb)) + (-ii - bb) + (zzLo - iiLo);
+      double t = s + e;
+      double tLo = e - (t - s);
+      s = t + c;
+      bb = s - t;
+      e = (t - (s - bb)) + (c - bb) + (tLo + cLo);
+      double zT = s + e;
+      double zTLo = e - (zT - s);
+
+      // Im(z² + c) = 2·z·zi + ci, doubling is exact
+      s = 2 * zzi + ci;
+      bb = s - 2 * zzi;
+      e = (2 * zzi - (s - bb)) + (ci - bb) + (2 * zziLo + ciLo);
+      zi = s + e;
+      ziLo = e - (zi - s);
+
+      z = zT;
+      zLo = zTLo;
+    }
+    return new double[][] { Arrays.copyOf(re, n), Arrays.copyOf(im, n) };
+  }
+
+  private double[] grow(double[] a) {
+    return Arrays.copyOf(a, (int) Math.min(maxIter + 2L, 2L * a.length));
+  }
+
+  /**
+   * Decimal digits the reference orbit of a frame needs: double-double for
+   * pixels down to about 1e-28, then enough BigDecimal digits to tell apart
+   * points radius apart, with room to spare for the iteration
+   */
+  public static int digitsFor(RenderParams p) {
+    if (2 * p.getRadius() / p.getSize() >= DOUBLE_DOUBLE_MIN_PIXEL)
+      return DOUBLE_DOUBLE_DIGITS;
+    return 20 + Math.max(0, (int) Math.ceil(-Math.log10(p.getRadius())));
+  }
+
+  /** true if this orbit is the one that would be computed for these arguments, or a more precise one */
+  public boolean matches(BigDecimal startX, BigDecimal startY, BigDecimal cX, BigDecimal cY, int maxIter,
+      int digits) {
+    return this.maxIter == maxIter && this.digits >= digits
+        && this.startX.compareTo(startX) == 0 && this.startY.compareTo(startY) == 0
+        && this.cX.compareTo(cX) == 0 && this.cY.compareTo(cY) == 0;
+  }
+
+  /** Number of stored values. The last one may have escaped */
+  public int length() {
+    return this.re.length;
+  }
+
+  /** Real parts, index n is z after n steps. Do not modify */
+  double[] re() {
+    return this.re;
+  }
+
+  /** Imaginary parts, index n is z after n steps. Do not modify */
+  double[] im() {
+    return this.im;
+  }
+}
@@ -0,0 +1,1030 @@
+package mandelbrotset.render;
+
+import java.util.Arrays;
+
+/**
+ * Renders whole fractal frames into int[] ARGB rasters. Has no JavaFX
+ * dependency, so it is shared by the viewer and the headless batch renderer.
+ */
+public class RenderEngine {
+
+  /** How the iteration counts of a tile are found */
+  public enum Algorithm {
+    /** Iterate every pixel */
+    BRUTE_FORCE,
+    /** Iterate rectangle borders and fill uniform ones, see MarianiSilver */
+    MARIANI_SILVER
+  }
+
+  /**
+   * Which escape time loop computes a pixel. Views zoomed in too far for
+   * doubles always use a higher Precision instead
+   */
+  public enum Kernel {
+    /** The original loop, every pixel runs until it escapes or hits maxIter */
+    SCALAR,
+    /** Cardioid, bulb and cycle checks for the Mandelbrot set, same results */
+    OPTIMIZED,
+    /**
+     * SIMD loop over several pixels at once, same results. Falls back to
+     * OPTIMIZED when the jdk.incubator.vector module is missing
+     */
+    VECTOR
+  }
+
+  /** Arithmetic the orbits of a frame are computed in, picked from its pixel size */
+  public enum Precision {
+    /** Plain doubles for every pixel, with the selected Kernel */
+    DOUBLE,
+    /** PerturbationKernel against a double-double reference orbit */
+    DOUBLE_DOUBLE,
+    /** PerturbationKernel against a BigDecimal reference orbit */
+    BIG_DECIMAL
+  }
+
+  // Sample spacing of the preview passes of renderProgressive(), coarsest first
+  private static final int[] PREVIEW_STEPS = { 8, 4, 2 };
+
+  // Pixels smaller than this are too close to double rounding (about 1000
+  // ulps of 2) for the normal kernels
+  static final double DOUBLE_MIN_PIXEL = Math.ulp(2.0) * 1024;
+
+  // Anti-aliased pixels average a jittered AA_GRID x AA_GRID grid of samples
+  private static final int AA_GRID = 4;
+  // Summed RGB difference to a neighbour that makes a pixel worth anti-aliasing
+  private static final int AA_CONTRAST = 60;
+
+  // Tiles of a frame with no frame before it are costed by a PROBE_GRID x
+  // PROBE_GRID grid of samples, 1/256 of the pixels of a whole tile
+  private static final int PROBE_GRID = 4;
+
+  // Checked once, VectorKernel must never be loaded without its module
+  private static final boolean VECTOR_AVAILABLE = ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent();
+
+  private final TileRenderer tiles;
+  private volatile Algorithm algorithm = Algorithm.BRUTE_FORCE;
+  private volatile Kernel kernel = Kernel.OPTIMIZED;
+  private volatile boolean antialias;
+
+  // Totals over every frame rendered by this engine
+  private final KernelStats stats = new KernelStats();
+  private final RenderMetrics metrics = new RenderMetrics(this);
+
+  // Counts of frames rendered before, or null
+  private volatile CountCache cache;
+
+  // Last deep zoom reference orbits. Zooming in and out keeps the center, so
+  // they can usually be reused
+  private volatile ReferenceOrbit reference;
+  private volatile ReferenceOrbit critical;
+
+  // Work done in each tile of the last full frame, which the tiles of the
+  // next one (usually a pan or zoom of it) are split by
+  private volatile TileCosts lastCosts;
+
+  public RenderEngine() {
+    this(new TileRenderer());
+  }
+
+  public RenderEngine(TileRenderer tiles) {
+    this.tiles = tiles;
+  }
+
+  /** Render a complete frame into a new buffer, blocking until it is done */
+  public int[] render(RenderParams params, Palette palette) {
+    int size = params.getSize();
+    int[] argb = new int[size * size];
+    render(params, palette, new int[size * size], argb);
+    return argb;
+  }
+
+  /** Render a complete frame, storing the raw iteration counts too, blocking until it is done */
+  public void render(RenderParams params, Palette palette, int[] counts, int[] argb) {
+    render(params, palette, counts, argb, TileRenderer.NO_MONITOR);
+  }
+
+  /**
+   * Render a frame into argb, blocking until it is done or the monitor cancels
+   * it. The raw iteration count of every pixel is stored in counts as well, so
+   * the frame can later be recolored without iterating again. Nothing is
+   * allocated per pixel. Frames found in the cache are only colored.
+   *
+   * @return true if the frame is complete
+   */
+  public boolean render(RenderParams params, Palette palette, int[] counts, int[] argb,
+      TileRenderer.Monitor monitor) {
+    FrameRecord frame = new FrameRecord(params, "render", counts);
+    int passes = this.antialias ? 2 : 1;
+    boolean done = fromCache(params, palette, counts, argb, frame) || toCache(params, counts,
+        fullPass(params, palette, counts, argb, passMonitor(monitor, 0, passes), false, costsFor(params), frame));
+    return frame.end(done && smooth(params, palette, counts, argb, passMonitor(monitor, 1, passes), frame));
+  }
+
+  /**
+   * Render rows y0 to y0 + rows (exclusive) of a frame, for frames too big to
+   * hold in memory at once. counts and argb hold just those rows, size * rows
+   * long. Every pixel is iterated, boundary tracing needs whole tiles. Anti
+   * aliasing also iterates the rows just above and below the band, so its
+   * edge pixels are compared with the same neighbours as in a whole frame
+   * and the bands add up to the image render() makes. Stops between any two
+   * tiles when the monitor cancels.
+   *
+   * @return true if the band is complete
+   */
+  public boolean renderBand(RenderParams params, Palette palette, int y0, int rows, int[] counts, int[] argb,
+      TileRenderer.Monitor monitor) {
+    FrameRecord frame = new FrameRecord(params, "band", counts);
+    int passes = this.antialias ? 2 : 1;
+    if (!bandPass(params, palette, y0, rows, counts, argb, passMonitor(monitor, 0, passes), frame))
+      return frame.end(false);
+    if (!this.antialias)
+      return frame.end(true);
+    int size = params.getSize();
+    int[] above = y0 > 0 ? neighbourRow(params, y0 - 1, frame) : null;
+    int[] below = y0 + rows < size ? neighbourRow(params, y0 + rows, frame) : null;
+    return frame.end(antialiasRows(params, palette, y0, rows, counts, argb, above, below,
+        passMonitor(monitor, 1, 2), frame));
+  }
+
+  /** The counts of row Py of the frame, iterated like bandPass() does */
+  private int[] neighbourRow(RenderParams params, int Py, FrameRecord frame) {
+    int size = params.getSize();
+    Kernel kernel = effectiveKernel();
+    Precision precision = precisionFor(params);
+    PerturbationKernel deep = precision != Precision.DOUBLE ? perturbation(params) : null;
+    boolean vector = kernel == Kernel.VECTOR && precision == Precision.DOUBLE;
+    int[] counts = new int[size];
+
+    tiles.render(size, 1, (x0, y0, x1, y1) -> {
+      KernelStats local = new KernelStats();
+      if (vector) {
+        VectorKernel.iterateRow(params, Py, x0, x1, counts, 0, local);
+      } else {
+        TileRenderer.PixelFunction pixel = pixelFunction(params, kernel, deep, local);
+        for (int Px = x0; Px < x1; Px++)
+          counts[Px] = pixel.compute(Px, Py);
+      }
+      frame.work.add(local);
+    }, TileRenderer.NO_MONITOR, null, frame.load);
+    return counts;
+  }
+
+  private boolean bandPass(RenderParams params, Palette palette, int y0, int rows, int[] counts, int[] argb,
+      TileRenderer.Monitor monitor, FrameRecord frame) {
+    int size = params.getSize();
+    Kernel kernel = effectiveKernel();
+    Precision precision = precisionFor(params);
+    PerturbationKernel deep = precision != Precision.DOUBLE ? perturbation(params) : null;
+    boolean vector = kernel == Kernel.VECTOR && precision == Precision.DOUBLE;
+    long[] costs = probe(params, kernel, deep, y0, rows);
+
+    return tiles.render(size, rows, (x0, by0, x1, by1) -> {
+      KernelStats local = new KernelStats();
+      TileRenderer.PixelFunction pixel = pixelFunction(params, kernel, deep, local);
+      for (int y = by0; y < by1; y++) {
+        int row = y * size;
+        if (vector) {
+          VectorKernel.iterateRow(params, y0 + y, x0, x1, counts, row, local);
+        } else {
+          for (int Px = x0; Px < x1; Px++)
+            counts[row + Px] = pixel.compute(Px, y0 + y);
+        }
+        palette.colorize(counts, argb, row + x0, row + x1);
+      }
+      frame.work.add(local);
+    }, monitor, costs, frame.load);
+  }
+
+  /**
+   * Render a frame after a whole pixel pan or 2x zoom of the frame in
+   * oldCounts, copying the counts that line up (see PixelReuse) and only
+   * iterating the rest. Boundary tracing still traces, getting the copied
+   * pixels of its borders for free. Stops between any two tiles when the
+   * monitor cancels. Reused counts are only nearly exact (see PixelReuse),
+   * so these frames are read from the cache but never stored in it.
+   *
+   * @param oldCounts Counts of the frame reuse was made from, not changed
+   * @return true if the frame is complete
+   */
+  public boolean renderReusing(RenderParams params, Palette palette, int[] counts, int[] argb,
+      TileRenderer.Monitor monitor, PixelReuse reuse, int[] oldCounts) {
+    FrameRecord frame = new FrameRecord(params, "reusing", counts);
+    int passes = this.antialias ? 2 : 1;
+    boolean done = fromCache(params, palette, counts, argb, frame)
+        || reusePass(params, palette, counts, argb, passMonitor(monitor, 0, passes), reuse, oldCounts, frame);
+    return frame.end(done && smooth(params, palette, counts, argb, passMonitor(monitor, 1, passes), frame));
+  }
+
+  /**
+   * Render the view of orbits at another iteration count from what they
+   * hold (see OrbitBuffer) instead of from scratch. A lower limit only caps
+   * the stored counts, a higher one carries on the orbits that hit the old
+   * limit, so only the added iterations are done, and only on pixels that
+   * hadn't escaped. Stops between any two tiles of orbits when the monitor
+   * cancels. Frames are only stored in the cache when they come out the
+   * same as render() would make them, from exact orbits (see
+   * OrbitBuffer.isExact()) with brute force in doubles.
+   *
+   * @param orbits Must be able to serve params, see OrbitBuffer.canServe()
+   * @return orbits for the higher of the two limits, or null if cancelled
+   */
+  public OrbitBuffer renderDeeper(RenderParams params, Palette palette, int[] counts, int[] argb,
+      TileRenderer.Monitor monitor, OrbitBuffer orbits) {
+    if (!orbits.canServe(params))
+      throw new IllegalArgumentException("Orbits are of another view, or too deep a zoom to carry on");
+    FrameRecord frame = new FrameRecord(params, "deeper", counts);
+    int passes = this.antialias ? 2 : 1;
+    OrbitBuffer deepest = orbits;
+    if (!fromCache(params, palette, counts, argb, frame)) {
+      if (params.getMaxIter() <= orbits.getMaxIter()) {
+        orbits.countsAt(params.getMaxIter(), counts);
+      } else {
+        deepest = resume(params, orbits, counts, passMonitor(monitor, 0, passes), frame);
+        if (deepest == null) {
+          frame.end(false);
+          return null;
+        }
+      }
+      palette.colorize(counts, argb, 0, counts.length);
+      toCache(params, counts, isExact(orbits, params));
+    }
+    return frame.end(smooth(params, palette, counts, argb, passMonitor(monitor, 1, passes), frame)) ? deepest
+        : null;
+  }
+
+  /**
+   * true if the counts renderDeeper() makes from orbits are the ones render()
+   * gives for params, so they can go in the cache. Only brute force counts
+   * in doubles are: boundary tracing fills pixels in differently at another
+   * limit, and perturbation's reference orbit depends on the limit
+   */
+  private boolean isExact(OrbitBuffer orbits, RenderParams params) {
+    return orbits.isExact() && this.algorithm == Algorithm.BRUTE_FORCE && precisionFor(params) == Precision.DOUBLE;
+  }
+
+  /** Carry on every orbit to the limit of params on every core, filling in all of counts */
+  private OrbitBuffer resume(RenderParams params, OrbitBuffer orbits, int[] counts, TileRenderer.Monitor monitor,
+      FrameRecord frame) {
+    int size = params.getSize();
+    int maxIter = params.getMaxIter();
+    int from = orbits.getMaxIter() + 1;
+    boolean julia = params.isJulia();
+    double kr = params.getJuliaConstant().getReal();
+    double ki = params.getJuliaConstant().getIm();
+
+    int[] pixels = orbits.getPixels();
+    double[] z = orbits.getZ();
+    double[] zi = orbits.getZi();
+    int n = pixels.length;
+    double[] nextZ = new double[n];
+    double[] nextZi = new double[n];
+    // Pixels at the old limit that aren't listed never escape
+    int[] old = orbits.getCounts();
+    for (int i = 0; i < counts.length; i++)
+      counts[i] = old[i] == from ? maxIter + 1 : old[i];
+
+    // One row of orbits, in tiles like any other
+    boolean done = n == 0 || tiles.render(n, 1, (x0, y0, x1, y1) -> {
+      KernelStats local = new KernelStats();
+      double[] orbit = new double[2];
+      for (int i = x0; i < x1; i++) {
+        double x = params.toReal(pixels[i] % size);
+        double y = params.toIm(pixels[i] / size);
+        int count;
+        if (!Double.isNaN(z[i]))
+          count = julia ? FractalKernel.resume(z[i], zi[i], kr, ki, from, maxIter, false, orbit, local)
+              : FractalKernel.resume(z[i], zi[i], x, y, from, maxIter, true, orbit, local);
+        else if (julia)
+          count = FractalKernel.resume(x, y, kr, ki, 0, maxIter, false, orbit, local);
+        else
+          count = FractalKernel.checkMandelbrot(x, y, maxIter, orbit, local);
+        counts[pixels[i]] = count;
+        nextZ[i] = orbit[0];
+        nextZi[i] = orbit[1];
+      }
+      frame.work.add(local);
+    }, monitor, null, frame.load);
+    if (!done)
+      return null;
+
+    // Only the orbits still going at the new limit are kept
+    int kept = 0;
+    for (int i = 0; i < n; i++) {
+      if (!Double.isNaN(nextZ[i]))
+        kept++;
+    }
+    int[] keptPixels = new int[kept];
+    double[] keptZ = new double[kept];
+    double[] keptZi = new double[kept];
+    for (int i = 0, k = 0; i < n; i++) {
+      if (!Double.isNaN(nextZ[i])) {
+        keptPixels[k] = pixels[i];
+        keptZ[k] = nextZ[i];
+        keptZi[k++] = nextZi[i];
+      }
+    }
+    return new OrbitBuffer(params, counts.clone(), keptPixels, keptZ, keptZi, orbits.isExact());
+  }
+
+  private boolean reusePass(RenderParams params, Palette palette, int[] counts, int[] argb,
+      TileRenderer.Monitor monitor, PixelReuse reuse, int[] oldCounts, FrameRecord frame) {
+    int size = params.getSize();
+    Kernel kernel = effectiveKernel();
+    Precision precision = precisionFor(params);
+    PerturbationKernel deep = precision != Precision.DOUBLE ? perturbation(params) : null;
+    boolean tracing = this.algorithm == Algorithm.MARIANI_SILVER;
+    boolean vector = kernel == Kernel.VECTOR && precision == Precision.DOUBLE;
+    Symmetry symmetry = Symmetry.of(params);
+
+    boolean done = tiles.render(size, size, (x0, y0, x1, y1) -> {
+      if (symmetry != null && symmetry.isCopied(x0, y0, x1, y1))
+        return;
+      KernelStats local = new KernelStats();
+      TileRenderer.PixelFunction pixel = pixelFunction(params, kernel, deep, local);
+      reuse.copy(oldCounts, counts, x0, y0, x1, y1);
+
+      if (tracing) {
+        MarianiSilver.fill(params, counts,
+            (Px, Py) -> reuse.isKnown(Px, Py) ? counts[Py * size + Px] : pixel.compute(Px, Py), x0, y0, x1, y1);
+      } else {
+        for (int Py = y0; Py < y1; Py++) {
+          int row = Py * size;
+          if (vector && reuse.isNewRow(Py)) {
+            vectorRow(params, symmetry, Py, x0, x1, counts, local);
+            continue;
+          }
+          for (int Px = x0; Px < x1; Px++) {
+            if (!reuse.isKnown(Px, Py) && (symmetry == null || !symmetry.isCopied(Px, Py)))
+              counts[row + Px] = pixel.compute(Px, Py);
+          }
+        }
+      }
+      colorize(palette, symmetry, counts, argb, size, x0, y0, x1, y1);
+
+      frame.work.add(local);
+    }, monitor, null, frame.load);
+    if (done && symmetry != null)
+      symmetry.copy(counts, argb);
+    return done;
+  }
+
+  /**
+   * Render a frame in passes of increasing resolution, so something is on
+   * screen long before the frame is done.
+   * <p>
+   * The preview passes iterate every 8th, then every 4th and every 2nd pixel
+   * in both directions, and fill argb with blocks of that size. Each pass only
+   * iterates the samples the coarser ones did not, and the final pass skips
+   * them too, so the whole frame costs no more than render(). Boundary
+   * tracing and the VECTOR kernel can't skip single pixels, so they only get
+   * the two cheap coarse previews (1/16 of the frame) before it. The listener
+   * is called from the rendering thread as soon as each preview pass is in
+   * argb. Stops between any two tiles when the monitor cancels. Frames found
+   * in the cache are colored right away, without previews.
+   *
+   * @return true if the frame is complete, with exact counts and colors
+   */
+  public boolean renderProgressive(RenderParams params, Palette palette, int[] counts, int[] argb,
+      TileRenderer.Monitor monitor, PassListener listener) {
+    FrameRecord frame = new FrameRecord(params, "progressive", counts);
+    if (fromCache(params, palette, counts, argb, frame))
+      return frame.end(smooth(params, palette, counts, argb, monitor, frame));
+    boolean reuse = !usesWholeTiles(params);
+    int previews = reuse ? PREVIEW_STEPS.length : PREVIEW_STEPS.length - 1;
+    int passes = previews + (this.antialias ? 2 : 1);
+    // Every pass does the same share of each tile, so they cost alike
+    long[] costs = costsFor(params);
+    for (int pass = 0; pass < previews; pass++) {
+      int step = PREVIEW_STEPS[pass];
+      if (!previewPass(params, palette, counts, argb, step, passMonitor(monitor, pass, passes), costs, frame))
+        return frame.end(false);
+      listener.passDone(step);
+    }
+    return frame.end(toCache(params, counts,
+        fullPass(params, palette, counts, argb, passMonitor(monitor, previews, passes), reuse, costs, frame))
+        && smooth(params, palette, counts, argb, passMonitor(monitor, previews + 1, passes), frame));
+  }
+
+  /**
+   * Resample frame i of a zoom from its exponential map (see ExpMap), as a
+   * frame of this engine: the rows iterated for it count in its stats,
+   * metrics, load and RenderEvent like the work of any other frame
+   */
+  void renderExpMap(ExpMap map, int i, Palette palette, int[] argb) {
+    FrameRecord frame = new FrameRecord(map.getSequence().frame(i), "expmap", null);
+    map.frame(i, palette, argb, frame.work, frame.load);
+    frame.end(true);
+  }
+
+  /** Called after each preview pass of renderProgressive() */
+  public interface PassListener {
+    /** argb now holds the whole frame in blocks of step x step pixels */
+    void passDone(int step);
+  }
+
+  /**
+   * Iterate every pixel of a frame.
+   *
+   * @param reuse true if the samples of the last (step 2) preview pass are in
+   *              counts already
+   * @param costs Estimated cost of each tile, see costsFor()
+   * @param work  Counters of the frame
+   */
+  private boolean fullPass(RenderParams params, Palette palette, int[] counts, int[] argb,
+      TileRenderer.Monitor monitor, boolean reuse, long[] costs, FrameRecord frame) {
+    int size = params.getSize();
+    boolean tracing = this.algorithm == Algorithm.MARIANI_SILVER;
+    Kernel kernel = effectiveKernel();
+    Precision precision = precisionFor(params);
+    PerturbationKernel deep = precision != Precision.DOUBLE ? perturbation(params) : null;
+    boolean vector = usesWholeTiles(params) && !tracing;
+    // Mirror images of other pixels are copied once those are done
+    Symmetry symmetry = Symmetry.of(params);
+    long[] measured = new long[TileRenderer.tileCount(size)];
+
+    boolean done = tiles.render(size, size, (x0, y0, x1, y1) -> {
+      if (symmetry != null && symmetry.isCopied(x0, y0, x1, y1))
+        return;
+      // Counted locally, then added to the totals once per tile
+      KernelStats local = new KernelStats();
+      TileRenderer.PixelFunction pixel = pixelFunction(params, kernel, deep, local);
+
+      if (tracing) {
+        MarianiSilver.fill(params, counts, pixel, x0, y0, x1, y1);
+      } else if (vector) {
+        for (int Py = y0; Py < y1; Py++)
+          vectorRow(params, symmetry, Py, x0, x1, counts, local);
+      } else {
+        for (int Py = y0; Py < y1; Py++) {
+          int row = Py * size;
+          // Tiles start on even pixels, so the known samples are at even offsets
+          boolean known = reuse && (Py & 1) == 0;
+          for (int Px = x0; Px < x1; Px++) {
+            if ((!known || (Px & 1) != 0) && (symmetry == null || !symmetry.isCopied(Px, Py)))
+              counts[row + Px] = pixel.compute(Px, Py);
+          }
+        }
+      }
+      colorize(palette, symmetry, counts, argb, size, x0, y0, x1, y1);
+
+      measured[TileRenderer.tileIndex(size, x0, y0)] = local.iterations + local.pixels;
+      frame.work.add(local);
+    }, monitor, costs, frame.load);
+    if (done) {
+      if (symmetry != null)
+        mirrorCosts(symmetry, size, measured);
+      this.lastCosts = new TileCosts(params, measured);
+    }
+    if (done && symmetry != null)
+      symmetry.copy(counts, argb);
+    return done;
+  }
+
+  /**
+   * Cost tiles as if symmetry hadn't copied any of their pixels, so the next
+   * frame (panned off the axis, say) doesn't take them for free: partly
+   * copied tiles are scaled up to all their pixels, wholly copied ones get
+   * the cost of the tile they were copied from
+   */
+  private static void mirrorCosts(Symmetry symmetry, int size, long[] measured) {
+    for (int pass = 0; pass < 2; pass++) {
+      for (int y0 = 0; y0 < size; y0 += TileRenderer.TILE_SIZE) {
+        for (int x0 = 0; x0 < size; x0 += TileRenderer.TILE_SIZE) {
+          int x1 = Math.min(x0 + TileRenderer.TILE_SIZE, size);
+          int y1 = Math.min(y0 + TileRenderer.TILE_SIZE, size);
+          int tile = TileRenderer.tileIndex(size, x0, y0);
+          if (!symmetry.isCopied(x0, y0, x1, y1)) {
+            // Iterated tiles first, the copied ones take their scaled costs
+            if (pass == 0) {
+              long iterated = 0;
+              for (int Py = y0; Py < y1; Py++) {
+                for (int from = symmetry.nextIterated(x0, Py, x1); from < x1;) {
+                  int to = symmetry.nextCopied(from, Py, x1);
+                  iterated += to - from;
+                  from = symmetry.nextIterated(to, Py, x1);
+                }
+              }
+              measured[tile] = measured[tile] * (x1 - x0) * (y1 - y0) / iterated;
+            }
+          } else if (pass == 1) {
+            // The tile the middle of this one mirrors
+            int Px = Math.max(0, Math.min(size - 1, symmetry.partnerX((x0 + x1) / 2)));
+            int Py = Math.max(0, Math.min(size - 1, symmetry.partnerY((y0 + y1) / 2)));
+            measured[tile] = measured[TileRenderer.tileIndex(size, Px, Py)];
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * Estimated cost of every tile of a frame, for TileRenderer to split them
+   * by: the work each tile took in the last frame, if that was of the same
+   * size and at most about a frame away, or a probe of a few pixels in each.
+   * Tiles symmetry copies cost nothing. null on a single worker, where the
+   * split doesn't matter.
+   */
+  private long[] costsFor(RenderParams params) {
+    if (tiles.getParallelism() == 1)
+      return null;
+    int size = params.getSize();
+    TileCosts last = this.lastCosts;
+    long[] costs;
+    if (last != null && last.isNear(params)) {
+      costs = last.tiles.clone();
+    } else {
+      PerturbationKernel deep = precisionFor(params) != Precision.DOUBLE ? perturbation(params) : null;
+      costs = probe(params, effectiveKernel(), deep, 0, size);
+    }
+    Symmetry symmetry = Symmetry.of(params);
+    if (symmetry != null) {
+      for (int y0 = 0; y0 < size; y0 += TileRenderer.TILE_SIZE) {
+        for (int x0 = 0; x0 < size; x0 += TileRenderer.TILE_SIZE) {
+          int x1 = Math.min(x0 + TileRenderer.TILE_SIZE, size);
+          int y1 = Math.min(y0 + TileRenderer.TILE_SIZE, size);
+          if (symmetry.isCopied(x0, y0, x1, y1))
+            costs[TileRenderer.tileIndex(size, x0, y0)] = 0;
+        }
+      }
+    }
+    return costs;
+  }
+
+  /**
+   * Cost of every tile of rows y0 to y0 + rows of a frame, from the work of
+   * a PROBE_GRID x PROBE_GRID grid of samples in it. null on a single worker
+   */
+  private long[] probe(RenderParams params, Kernel kernel, PerturbationKernel deep, int y0, int rows) {
+    if (tiles.getParallelism() == 1)
+      return null;
+    int size = params.getSize();
+    long[] costs = new long[TileRenderer.tileCount(size, rows)];
+    tiles.render(size, rows, (x0, by0, x1, by1) -> {
+      // Not added to the totals or the load, the samples aren't part of the frame
+      KernelStats local = new KernelStats();
+      TileRenderer.PixelFunction pixel = pixelFunction(params, kernel, deep, local);
+      for (int j = 0; j < PROBE_GRID; j++) {
+        int Py = y0 + by0 + (2 * j + 1) * (by1 - by0) / (2 * PROBE_GRID);
+        for (int i = 0; i < PROBE_GRID; i++)
+          pixel.compute(x0 + (2 * i + 1) * (x1 - x0) / (2 * PROBE_GRID), Py);
+      }
+      costs[TileRenderer.tileIndex(size, x0, by0)] = local.iterations + local.pixels;
+    }, TileRenderer.NO_MONITOR, null, null);
+    return costs;
+  }
+
+  /** Work measured in each tile of a frame */
+  private static class TileCosts {
+    final int size;
+    final boolean julia;
+    final ViewState view;
+    final long[] tiles;
+
+    TileCosts(RenderParams params, long[] tiles) {
+      this.size = params.getSize();
+      this.julia = params.isJulia();
+      this.view = params.getView();
+      this.tiles = tiles;
+    }
+
+    /**
+     * true if these costs still describe the tiles of p: the same size and
+     * fractal, zoomed by at most 2x and panned by at most a frame width
+     */
+    boolean isNear(RenderParams p) {
+      if (p.getSize() != size || p.isJulia() != julia)
+        return false;
+      double radius = view.getRadius().doubleValue();
+      double zoom = p.getView().getRadius().doubleValue() / radius;
+      if (!(zoom >= 0.5 && zoom <= 2))
+        return false;
+      double dx = p.getView().getCenterX().subtract(view.getCenterX()).doubleValue();
+      double dy = p.getView().getCenterY().subtract(view.getCenterY()).doubleValue();
+      return Math.hypot(dx, dy) <= 2 * radius;
+    }
+  }
+
+  /** Color a tile, except the pixels symmetry copies later, whose counts aren't there yet */
+  private static void colorize(Palette palette, Symmetry symmetry, int[] counts, int[] argb, int size, int x0,
+      int y0, int x1, int y1) {
+    for (int Py = y0; Py < y1; Py++) {
+      int row = Py * size;
+      if (symmetry == null) {
+        palette.colorize(counts, argb, row + x0, row + x1);
+        continue;
+      }
+      for (int from = symmetry.nextIterated(x0, Py, x1); from < x1;) {
+        int to = symmetry.nextCopied(from, Py, x1);
+        palette.colorize(counts, argb, row + from, row + to);
+        from = symmetry.nextIterated(to, Py, x1);
+      }
+    }
+  }
+
+  /** Vector kernel for the columns x0 to x1 of row Py that aren't copied by symmetry */
+  private static void vectorRow(RenderParams params, Symmetry symmetry, int Py, int x0, int x1, int[] counts,
+      KernelStats stats) {
+    if (symmetry == null) {
+      VectorKernel.iterateRow(params, Py, x0, x1, counts, stats);
+      return;
+    }
+    // Runs of iterated columns between the copied ones
+    for (int from = symmetry.nextIterated(x0, Py, x1); from < x1;) {
+      int to = symmetry.nextCopied(from, Py, x1);
+      VectorKernel.iterateRow(params, Py, from, to, counts, stats);
+      from = symmetry.nextIterated(to, Py, x1);
+    }
+  }
+
+  /**
+   * Iterate the pixels on a grid of the given step that no coarser pass did,
+   * then color every step x step block with its top left sample.
+   */
+  private boolean previewPass(RenderParams params, Palette palette, int[] counts, int[] argb, int step,
+      TileRenderer.Monitor monitor, long[] costs, FrameRecord frame) {
+    int size = params.getSize();
+    boolean first = step == PREVIEW_STEPS[0];
+    Precision precision = precisionFor(params);
+    PerturbationKernel deep = precision != Precision.DOUBLE ? perturbation(params) : null;
+    Kernel kernel = effectiveKernel();
+
+    return tiles.render(size, size, (x0, y0, x1, y1) -> {
+      KernelStats local = new KernelStats();
+      TileRenderer.PixelFunction pixel = pixelFunction(params, kernel, deep, local);
+      int coarse = 2 * step;
+
+      // Tile corners are multiples of every step, so the grids line up
+      for (int Py = y0; Py < y1; Py += step) {
+        int row = Py * size;
+        boolean coarseRow = Py % coarse == 0;
+        for (int Px = x0; Px < x1; Px += step) {
+          if (first || !coarseRow || Px % coarse != 0)
+            counts[row + Px] = pixel.compute(Px, Py);
+        }
+      }
+      for (int Py = y0; Py < y1; Py += step) {
+        int row = Py * size;
+        int rows = Math.min(step, y1 - Py);
+        for (int Px = x0; Px < x1; Px += step) {
+          int color = palette.pickColor(counts[row + Px]);
+          int cols = Math.min(step, x1 - Px);
+          for (int y = 0; y < rows; y++) {
+            int at = row + y * size + Px;
+            Arrays.fill(argb, at, at + cols, color);
+          }
+        }
+      }
+
+      frame.work.add(local);
+    }, monitor, costs, frame.load);
+  }
+
+  /**
+   * Anti-alias a finished frame in place: every pixel whose color stands out
+   * from one of its neighbours is replaced by the average of a 4x4 grid of
+   * jittered samples inside it. counts keep the single sample of each pixel.
+   * Stops between any two tiles when the monitor cancels.
+   *
+   * @return true if the whole frame is done
+   */
+  public boolean antialias(RenderParams params, Palette palette, int[] counts, int[] argb,
+      TileRenderer.Monitor monitor) {
+    FrameRecord frame = new FrameRecord(params, "antialias", counts);
+    return frame.end(antialiasRows(params, palette, 0, params.getSize(), counts, argb, null, null, monitor,
+        frame));
+  }
+
+  /** Anti-alias the frame if that is turned on */
+  private boolean smooth(RenderParams params, Palette palette, int[] counts, int[] argb,
+      TileRenderer.Monitor monitor, FrameRecord frame) {
+    return !this.antialias
+        || antialiasRows(params, palette, 0, params.getSize(), counts, argb, null, null, monitor, frame);
+  }
+
+  /**
+   * Anti-alias rows y0 to y0 + rows of a frame, in buffers holding just those
+   * rows. above and below are the counts of the rows next to them, null at
+   * the top and bottom of the frame
+   */
+  private boolean antialiasRows(RenderParams params, Palette palette, int y0, int rows, int[] counts, int[] argb,
+      int[] above, int[] below, TileRenderer.Monitor monitor, FrameRecord frame) {
+    int size = params.getSize();
+    Precision precision = precisionFor(params);
+    PerturbationKernel deep = precision != Precision.DOUBLE ? perturbation(params) : null;
+
+    return tiles.render(size, rows, (x0, by0, x1, by1) -> {
+      KernelStats local = new KernelStats();
+      Sampler sampler = samplerFor(params, deep, local);
+      for (int y = by0; y < by1; y++) {
+        int row = y * size;
+        for (int Px = x0; Px < x1; Px++) {
+          // Neighbours are compared by their counts, their argb may be anti-aliased already
+          int color = palette.pickColor(counts[row + Px]);
+          if ((Px > 0 && contrast(color, palette.pickColor(counts[row + Px - 1])))
+              || (Px + 1 < size && contrast(color, palette.pickColor(counts[row + Px + 1])))
+              || (y > 0 ? contrast(color, palette.pickColor(counts[row - size + Px]))
+                  : above != null && contrast(color, palette.pickColor(above[Px])))
+              || (y + 1 < rows ? contrast(color, palette.pickColor(counts[row + size + Px]))
+                  : below != null && contrast(color, palette.pickColor(below[Px]))))
+            argb[row + Px] = supersample(sampler, palette, color, Px, y0 + y);
+        }
+      }
+      // The sampler counts its samples as pixels
+      local.supersamples = local.pixels;
+      local.pixels = 0;
+      frame.work.add(local);
+    }, monitor, null, frame.load);
+  }
+
+  private static boolean contrast(int a, int b) {
+    int d = Math.abs(((a >> 16) & 0xff) - ((b >> 16) & 0xff)) + Math.abs(((a >> 8) & 0xff) - ((b >> 8) & 0xff))
+        + Math.abs((a & 0xff) - (b & 0xff));
+    return d > AA_CONTRAST;
+  }
+
+  /**
+   * Average color of a grid of samples inside pixel (Px, Py), one per grid
+   * cell at a random spot in it. The jitter is a hash of the pixel, so the
+   * same frame always comes out the same. The first cell uses the pixel's own
+   * sample, of color.
+   */
+  private static int supersample(Sampler sampler, Palette palette, int color, int Px, int Py) {
+    int r = (color >> 16) & 0xff;
+    int g = (color >> 8) & 0xff;
+    int b = color & 0xff;
+    for (int i = 1; i < AA_GRID * AA_GRID; i++) {
+      int h = jitter(Px, Py, i);
+      double x = Px + (i % AA_GRID + (h & 0xffff) / 65536.0) / AA_GRID;
+      double y = Py + (i / AA_GRID + (h >>> 16) / 65536.0) / AA_GRID;
+      int c = palette.pickColor(sampler.compute(x, y));
+      r += (c >> 16) & 0xff;
+      g += (c >> 8) & 0xff;
+      b += c & 0xff;
+    }
+    int n = AA_GRID * AA_GRID;
+    return 0xff000000 | ((r + n / 2) / n) << 16 | ((g + n / 2) / n) << 8 | (b + n / 2) / n;
+  }
+
+  /** 32 well mixed bits for sample i of a pixel (murmur3 finalizer) */
+  private static int jitter(int Px, int Py, int i) {
+    int h = Px * 0x9e3779b1 + Py * 0x85ebca6b + i * 0xc2b2ae35;
+    h ^= h >>> 16;
+    h *= 0x85ebca6b;
+    h ^= h >>> 13;
+    h *= 0xc2b2ae35;
+    return h ^ (h >>> 16);
+  }
+
+  /** Iteration count at any point of a frame, in fractional pixels */
+  @FunctionalInterface
+  private interface Sampler {
+    int compute(double Px, double Py);
+  }
+
+  /** The kernel anti-aliasing samples are taken with, counting into local */
+  private static Sampler samplerFor(RenderParams params, PerturbationKernel deep, KernelStats local) {
+    if (deep != null) {
+      int size = params.getSize();
+      double radius = params.getRadius();
+      return (Px, Py) -> deep.iterateOffset((2 * Px - size) * radius / size, (2 * Py - size) * radius / size, local);
+    }
+    return (Px, Py) -> FractalKernel.sample(params, Px, Py, local);
+  }
+
+  /** Fill counts from the cache and color them, if the frame is in it */
+  private boolean fromCache(RenderParams params, Palette palette, int[] counts, int[] argb, FrameRecord frame) {
+    CountCache cache = this.cache;
+    if (cache == null || !cache.get(params, this.algorithm, counts))
+      return false;
+    palette.colorize(counts, argb, 0, counts.length);
+    frame.cached = true;
+    return true;
+  }
+
+  /**
+   * Store a finished frame in the cache, passing finished through. Only
+   * copies the counts, the cache writes its file in the background
+   */
+  private boolean toCache(RenderParams params, int[] counts, boolean finished) {
+    CountCache cache = this.cache;
+    if (finished && cache != null)
+      cache.put(params, this.algorithm, counts);
+    return finished;
+  }
+
+  /** true if tiles are done by boundary tracing or whole vectors, not pixel by pixel */
+  private boolean usesWholeTiles(RenderParams params) {
+    if (this.algorithm == Algorithm.MARIANI_SILVER)
+      return true;
+    // Vectors only exist for doubles
+    return effectiveKernel() == Kernel.VECTOR && precisionFor(params) == Precision.DOUBLE;
+  }
+
+  /** The pixel by pixel kernel for a frame, counting into local */
+  private static TileRenderer.PixelFunction pixelFunction(RenderParams params, Kernel kernel,
+      PerturbationKernel deep, KernelStats local) {
+    if (deep != null)
+      return (Px, Py) -> deep.iterate(Px, Py, local);
+    if (kernel != Kernel.SCALAR)
+      return (Px, Py) -> FractalKernel.iterateFast(params, Px, Py, local);
+    return (Px, Py) -> FractalKernel.iterate(params, Px, Py, local);
+  }
+
+  /**
+   * The work, worker busy time and wall time of one frame. end() adds them
+   * to the totals, the load and the metrics, and commits the frame's
+   * RenderEvent.
+   */
+  private class FrameRecord {
+    final RenderParams params;
+    final String kind;
+    // The frame's counts, or band's, read once it is finished. null for
+    // frames resampled from an ExpMap, which have none
+    final int[] counts;
+    // Counters of every pass of the frame, each tile adds its own
+    final KernelStats work = new KernelStats();
+    // Busy time of the workers over every pass, so the load counts the
+    // frame once however many passes it took
+    final WorkerLoad.Frame load = tiles.getLoad().newFrame();
+    final RenderEvent event = new RenderEvent();
+    final long start;
+    boolean cached;
+
+    FrameRecord(RenderParams params, String kind, int[] counts) {
+      this.params = params;
+      this.kind = kind;
+      this.counts = counts;
+      this.event.begin();
+      this.start = System.nanoTime();
+    }
+
+    /** Report the frame, passing done through */
+    boolean end(boolean done) {
+      long nanos = System.nanoTime() - start;
+      event.end();
+      stats.add(work);
+      tiles.getLoad().add(load);
+      metrics.frame(nanos, work, cached, done);
+      if (event.shouldCommit()) {
+        event.kind = kind;
+        event.julia = params.isJulia();
+        event.juliaAngle = params.getJuliaAngle();
+        event.centerX = params.getView().getCenterX().toString();
+        event.centerY = params.getView().getCenterY().toString();
+        event.radius = params.getView().getRadius().toString();
+        event.size = params.getSize();
+        event.maxIter = params.getMaxIter();
+        event.precision = precisionFor(params).toString();
+        event.kernel = effectiveKernel().toString();
+        event.algorithm = algorithm.toString();
+        event.antialias = antialias;
+        event.cached = cached;
+        event.completed = done;
+        event.iterations = work.iterations;
+        event.iterationsPerSecond = nanos == 0 ? 0 : work.iterations * 1e9 / nanos;
+        event.pixels = work.pixels;
+        event.supersamples = work.supersamples;
+        // Of every pixel, cached, copied or filled in as well as iterated.
+        // A cancelled frame's counts are partly the last frame's
+        if (done && counts != null) {
+          int maxIter = params.getMaxIter();
+          for (int count : counts) {
+            if (count > maxIter)
+              event.interior++;
+          }
+          event.escaped = counts.length - event.interior;
+        }
+        event.commit();
+      }
+      return done;
+    }
+  }
+
+  /** Reports the tiles of one pass as part of the progress of all passes */
+  private static TileRenderer.Monitor passMonitor(TileRenderer.Monitor monitor, int pass, int passes) {
+    return new TileRenderer.Monitor() {
+      @Override
+      public boolean isCancelled() {
+        return monitor.isCancelled();
+      }
+
+      @Override
+      public void tileDone(int done, int total) {
+        monitor.tileDone(pass * total + done, passes * total);
+      }
+    };
+  }
+
+  /** Deep zoom kernel for a frame, computing its reference orbits unless the last ones still fit */
+  private PerturbationKernel perturbation(RenderParams params) {
+    ReferenceOrbit ref = PerturbationKernel.referenceFor(params, this.reference);
+    ReferenceOrbit crit = PerturbationKernel.criticalFor(params, ref, this.critical);
+    this.reference = ref;
+    this.critical = crit;
+    return new PerturbationKernel(params, ref, crit);
+  }
+
+  /**
+   * The cheapest arithmetic that still resolves the pixels of a frame: doubles,
+   * then a double-double reference orbit down to pixels of about 1e-28, then a
+   * BigDecimal one
+   */
+  public static Precision precisionFor(RenderParams params) {
+    if (2 * params.getRadius() / params.getSize() >= DOUBLE_MIN_PIXEL)
+      return Precision.DOUBLE;
+    return ReferenceOrbit.digitsFor(params) <= ReferenceOrbit.DOUBLE_DOUBLE_DIGITS ? Precision.DOUBLE_DOUBLE
+        : Precision.BIG_DECIMAL;
+  }
+
+  public CountCache getCache() {
+    return this.cache;
+  }
+
+  /** Cache finished frames in cache from now on, or stop caching with null */
+  public void setCache(CountCache cache) {
+    this.cache = cache;
+  }
+
+  /** Number of tiles a frame of these params is split into, for progress reporting */
+  public int tileCount(RenderParams params) {
+    return TileRenderer.tileCount(params.getSize());
+  }
+
+  public Algorithm getAlgorithm() {
+    return this.algorithm;
+  }
+
+  /** Takes effect from the next frame */
+  public void setAlgorithm(Algorithm algorithm) {
+    this.algorithm = algorithm;
+  }
+
+  public boolean isAntialias() {
+    return this.antialias;
+  }
+
+  /**
+   * Anti-alias frames from the next one on, see antialias(). Costs 15 extra
+   * samples for each pixel on an edge, typically a fraction of 16x
+   * supersampling for much the same result.
+   */
+  public void setAntialias(boolean antialias) {
+    this.antialias = antialias;
+  }
+
+  public Kernel getKernel() {
+    return this.kernel;
+  }
+
+  /**
+   * Takes effect from the next frame. VECTOR falls back to OPTIMIZED when the
+   * jdk.incubator.vector module is missing, see isVectorAvailable()
+   *
+   * @return the kernel frames are actually rendered with, see effectiveKernel()
+   */
+  public Kernel setKernel(Kernel kernel) {
+    this.kernel = kernel;
+    return effectiveKernel();
+  }
+
+  /** The kernel frames are actually rendered with, after any fallback */
+  public Kernel effectiveKernel() {
+    Kernel k = this.kernel;
+    return (k == Kernel.VECTOR && !VECTOR_AVAILABLE) ? Kernel.OPTIMIZED : k;
+  }
+
+  /** true if the Vector API module was loaded, so the VECTOR kernel can be used */
+  public static boolean isVectorAvailable() {
+    return VECTOR_AVAILABLE;
+  }
+
+  /**
+   * Running totals of kernel work, including how many pixels bailed out early
+   * through the cardioid, bulb and cycle checks. Call reset() on it to start
+   * counting from zero.
+   */
+  public KernelStats getStats() {
+    return this.stats;
+  }
+
+  /**
+   * Running totals of how busy each worker was, to check the tiles are
+   * spread evenly. Call reset() on it to start counting from zero.
+   */
+  public WorkerLoad getLoad() {
+    return tiles.getLoad();
+  }
+
+  /** The renderer every frame is tiled on, for other work that should count in getLoad() */
+  TileRenderer getTiles() {
+    return this.tiles;
+  }
+
+  /**
+   * Latency, throughput and cache figures of recent frames. Call register()
+   * on it to watch them over JMX.
+   */
+  public RenderMetrics getMetrics() {
+    return this.metrics;
+  }
+}
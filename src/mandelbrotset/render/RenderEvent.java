@@ -0,0 +1,93 @@
+package mandelbrotset.render;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Frequency;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight recorder event for every frame a RenderEngine renders, finished or
+ * cancelled. The event's duration is the frame's wall time.
+ * <p>
+ * Costs nothing unless a recording is running, start one with
+ * -XX:StartFlightRecording or jcmd PID JFR.start and open it in JDK Mission
+ * Control (under Mandelbrot) or with jfr print --events mandelbrotset.Frame.
+ */
+@Name("mandelbrotset.Frame")
+@Label("Fractal Frame")
+@Category("Mandelbrot")
+@Description("A frame, or band of a poster, rendered by a RenderEngine")
+@StackTrace(false)
+class RenderEvent extends Event {
+
+  @Label("Kind")
+  @Description("render, progressive, reusing, deeper, band, antialias or expmap")
+  String kind;
+
+  @Label("Julia")
+  boolean julia;
+
+  @Label("Julia Angle")
+  double juliaAngle;
+
+  @Label("Center X")
+  String centerX;
+
+  @Label("Center Y")
+  String centerY;
+
+  @Label("Radius")
+  String radius;
+
+  @Label("Size")
+  @Description("Width and height in pixels")
+  int size;
+
+  @Label("Max Iterations")
+  int maxIter;
+
+  @Label("Precision")
+  String precision;
+
+  @Label("Kernel")
+  String kernel;
+
+  @Label("Algorithm")
+  String algorithm;
+
+  @Label("Anti-aliased")
+  boolean antialias;
+
+  @Label("From Cache")
+  boolean cached;
+
+  @Label("Completed")
+  @Description("false if the frame was cancelled")
+  boolean completed;
+
+  @Label("Iterations")
+  long iterations;
+
+  @Label("Iterations per Second")
+  @Frequency
+  double iterationsPerSecond;
+
+  @Label("Pixels Iterated")
+  @Description("Pixels whose count was computed, not cached, copied or filled in")
+  long pixels;
+
+  @Label("Supersamples")
+  @Description("Anti-aliasing samples computed")
+  long supersamples;
+
+  @Label("Pixels Escaped")
+  @Description("Pixels of the finished frame that escaped, 0 if it was cancelled or resampled")
+  long escaped;
+
+  @Label("Pixels Interior")
+  @Description("Pixels of the finished frame that never escaped, 0 if it was cancelled or resampled")
+  long interior;
+}
@@ -0,0 +1,196 @@
+package mandelbrotset.render;
+
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.function.LongSupplier;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * Running figures of a RenderEngine's frames, for watching a viewer or batch
+ * job with jconsole, VisualVM or any other JMX client once register() was
+ * called. Each frame is also a RenderEvent for the flight recorder.
+ * <p>
+ * Latency percentiles and throughput are taken over the last WINDOW frames,
+ * so they follow what the engine is doing now rather than averaging the
+ * whole run. Bands of a poster and anti-aliasing of a recolored frame count
+ * as frames of their own.
+ */
+public class RenderMetrics implements RenderMetricsMBean {
+
+  // Frames the rolling figures are taken over
+  private static final int WINDOW = 1000;
+
+  private final RenderEngine engine;
+
+  private long frames;
+  private long cancelled;
+  private long cached;
+  private long iterations;
+
+  // The last WINDOW frames, oldest at next once the ring is full. Latency is
+  // NaN for cancelled frames, which never reached the screen
+  private final double[] latency = new double[WINDOW];
+  private final long[] nanos = new long[WINDOW];
+  private final long[] frameIterations = new long[WINDOW];
+  private final long[] framePixels = new long[WINDOW];
+  private int next;
+  private int filled;
+
+  // Counts of whoever asks the engine for renders, see setRequestCounters()
+  private volatile LongSupplier requests = () -> 0;
+  private volatile LongSupplier coalesced = () -> 0;
+
+  RenderMetrics(RenderEngine engine) {
+    this.engine = engine;
+  }
+
+  /** Add a frame that took nanos of wall time */
+  synchronized void frame(long nanos, KernelStats work, boolean fromCache, boolean done) {
+    this.frames++;
+    if (!done)
+      this.cancelled++;
+    else if (fromCache)
+      this.cached++;
+    this.iterations += work.iterations;
+
+    this.latency[next] = done ? nanos / 1e6 : Double.NaN;
+    this.nanos[next] = nanos;
+    this.frameIterations[next] = work.iterations;
+    this.framePixels[next] = work.pixels;
+    this.next = (next + 1) % WINDOW;
+    this.filled = Math.min(filled + 1, WINDOW);
+  }
+
+  /**
+   * Show these metrics to JMX clients as mandelbrotset:type=RenderMetrics,name=name.
+   * Failures are printed, the engine works the same without.
+   */
+  public void register(String name) {
+    try {
+      ManagementFactory.getPlatformMBeanServer().registerMBean(this,
+          new ObjectName("mandelbrotset:type=RenderMetrics,name=" + name));
+    } catch (JMException e) {
+      System.err.println("Could not register render metrics: " + e.getMessage());
+    }
+  }
+
+  @Override
+  public synchronized long getFrames() {
+    return this.frames;
+  }
+
+  @Override
+  public synchronized long getCancelledFrames() {
+    return this.cancelled;
+  }
+
+  @Override
+  public synchronized long getCachedFrames() {
+    return this.cached;
+  }
+
+  @Override
+  public synchronized double getCacheHitRate() {
+    long finished = frames - cancelled;
+    return finished == 0 ? 0 : (double) cached / finished;
+  }
+
+  @Override
+  public long getCacheMemoryHits() {
+    CountCache cache = engine.getCache();
+    return cache == null ? 0 : cache.getMemoryHits();
+  }
+
+  @Override
+  public long getCacheDiskHits() {
+    CountCache cache = engine.getCache();
+    return cache == null ? 0 : cache.getDiskHits();
+  }
+
+  @Override
+  public long getCacheMisses() {
+    CountCache cache = engine.getCache();
+    return cache == null ? 0 : cache.getMisses();
+  }
+
+  @Override
+  public double getLatencyP50Millis() {
+    return percentile(0.5);
+  }
+
+  @Override
+  public double getLatencyP99Millis() {
+    return percentile(0.99);
+  }
+
+  /** Nearest rank percentile of the finished frames in the window, 0 if there are none */
+  private synchronized double percentile(double p) {
+    double[] sorted = new double[filled];
+    int n = 0;
+    for (int i = 0; i < filled; i++) {
+      if (!Double.isNaN(latency[i]))
+        sorted[n++] = latency[i];
+    }
+    if (n == 0)
+      return 0;
+    Arrays.sort(sorted, 0, n);
+    return sorted[Math.max(0, (int) Math.ceil(p * n) - 1)];
+  }
+
+  @Override
+  public synchronized double getIterationsPerSecond() {
+    return perSecond(frameIterations);
+  }
+
+  @Override
+  public synchronized double getPixelsPerSecond() {
+    return perSecond(framePixels);
+  }
+
+  /** Sum of amounts over the wall time of the frames in the window */
+  private double perSecond(long[] amounts) {
+    long total = 0;
+    long time = 0;
+    for (int i = 0; i < filled; i++) {
+      total += amounts[i];
+      time += nanos[i];
+    }
+    return time == 0 ? 0 : total * 1e9 / time;
+  }
+
+  @Override
+  public synchronized long getIterations() {
+    return this.iterations;
+  }
+
+  /**
+   * Show how many renders a caller asked for and how many of those it folded
+   * into another one instead of starting them
+   */
+  public void setRequestCounters(LongSupplier requests, LongSupplier coalesced) {
+    this.requests = requests;
+    this.coalesced = coalesced;
+  }
+
+  @Override
+  public long getRenderRequests() {
+    return this.requests.getAsLong();
+  }
+
+  @Override
+  public long getCoalescedRequests() {
+    return this.coalesced.getAsLong();
+  }
+
+  @Override
+  public double getWorkerBalance() {
+    return engine.getLoad().getBalance();
+  }
+
+  @Override
+  public synchronized void reset() {
+    this.frames = this.cancelled = this.cached = this.iterations = 0;
+    this.next = this.filled = 0;
+  }
+}
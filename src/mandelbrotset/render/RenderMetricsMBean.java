@@ -0,0 +1,57 @@
+package mandelbrotset.render;
+
+/**
+ * What RenderMetrics shows to JMX clients such as jconsole and VisualVM.
+ * Latencies and throughput are over the most recent frames, frame counts
+ * since the start or the last reset(), cache lookups since the cache was
+ * created.
+ */
+public interface RenderMetricsMBean {
+
+  /** Frames rendered, finished or cancelled */
+  long getFrames();
+
+  long getCancelledFrames();
+
+  /** Finished frames whose counts came from the cache */
+  long getCachedFrames();
+
+  /** Cached frames out of all finished ones, 0 to 1 */
+  double getCacheHitRate();
+
+  /** Lookups the cache answered from memory, 0 without a cache */
+  long getCacheMemoryHits();
+
+  /** Lookups the cache answered from disk, 0 without a cache */
+  long getCacheDiskHits();
+
+  /** Lookups the cache had nothing for, 0 without a cache */
+  long getCacheMisses();
+
+  /** Median wall time of recent finished frames */
+  double getLatencyP50Millis();
+
+  /** 99th percentile wall time of recent finished frames */
+  double getLatencyP99Millis();
+
+  /** Iterations per second of wall time over recent frames */
+  double getIterationsPerSecond();
+
+  /** Pixels iterated per second of wall time over recent frames */
+  double getPixelsPerSecond();
+
+  /** Iterations over every frame */
+  long getIterations();
+
+  /** Renders asked for by the viewer, 0 for other users of the engine */
+  long getRenderRequests();
+
+  /** Render requests folded into one already due, so no render was started for them */
+  long getCoalescedRequests();
+
+  /** How evenly the cores shared the tiles, see WorkerLoad.getBalance() */
+  double getWorkerBalance();
+
+  /** Start counting frames from zero */
+  void reset();
+}
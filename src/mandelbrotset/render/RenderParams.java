@@ -0,0 +1,138 @@
+package mandelbrotset.render;
+
+import java.util.Objects;
+
+/**
+ * An immutable snapshot of everything needed to compute one fractal frame:
+ * the square view window on the complex plane, image size, iteration limit and
+ * fractal type.
+ * <p>
+ * Taking one snapshot per frame means worker threads never read live (JavaFX)
+ * state, and a frame in flight is not affected by later changes.
+ */
+public class RenderParams {
+
+  // The magic radius 0.7885 comes from this animation:
+  // https://en.wikipedia.org/wiki/Julia_set#/media/File:JSr07885.gif
+  public static final double JULIA_MAGNITUDE = 0.7885;
+
+  private final int size;
+  private final ViewState view;
+  // The view in doubles, for the normal kernels
+  private final double centerX;
+  private final double centerY;
+  private final double radius;
+  private final int maxIter;
+  private final boolean julia;
+  private final double juliaAngle;
+  private final Complex juliaConstant;
+
+  /**
+   * @param size       Width and height of the square image in pixels
+   * @param centerX    Real part of the view center
+   * @param centerY    Imaginary part of the view center
+   * @param radius     Half the side length of the square view
+   * @param maxIter    Iteration limit
+   * @param julia      true for a Julia set, false for the Mandelbrot set
+   * @param juliaAngle Angle of the Julia constant on the 0.7885 circle
+   */
+  public RenderParams(int size, double centerX, double centerY, double radius, int maxIter, boolean julia,
+      double juliaAngle) {
+    this(size, new ViewState(centerX, centerY, radius), maxIter, julia, juliaAngle);
+  }
+
+  /**
+   * @param size       Width and height of the square image in pixels
+   * @param view       Center and radius of the square view, at full precision
+   * @param maxIter    Iteration limit
+   * @param julia      true for a Julia set, false for the Mandelbrot set
+   * @param juliaAngle Angle of the Julia constant on the 0.7885 circle
+   */
+  public RenderParams(int size, ViewState view, int maxIter, boolean julia, double juliaAngle) {
+    if (size <= 0)
+      throw new IllegalArgumentException("Size must be positive: " + size);
+    if (maxIter < 0)
+      throw new IllegalArgumentException("Iteration count must not be negative: " + maxIter);
+    this.size = size;
+    this.view = view;
+    this.centerX = view.getCenterX().doubleValue();
+    this.centerY = view.getCenterY().doubleValue();
+    this.radius = view.getRadius().doubleValue();
+    this.maxIter = maxIter;
+    this.julia = julia;
+    this.juliaAngle = juliaAngle;
+    this.juliaConstant = Complex.polar2Rect(JULIA_MAGNITUDE, juliaAngle);
+  }
+
+  /**
+   * Convert a pixel column to the real part of its point on the complex plane.
+   * This is the same math the viewer has always used, so results are exact
+   * matches.
+   */
+  public double toReal(double Px) {
+    return ((Px * (2 * radius)) / size) + (centerX - radius);
+  }
+
+  /** Convert a pixel row to the imaginary part of its point on the complex plane */
+  public double toIm(double Py) {
+    return ((Py * (2 * radius)) / size) + (centerY - radius);
+  }
+
+  public int getSize() {
+    return this.size;
+  }
+
+  /** The view at full precision */
+  public ViewState getView() {
+    return this.view;
+  }
+
+  public double getCenterX() {
+    return this.centerX;
+  }
+
+  public double getCenterY() {
+    return this.centerY;
+  }
+
+  public double getRadius() {
+    return this.radius;
+  }
+
+  public int getMaxIter() {
+    return this.maxIter;
+  }
+
+  public boolean isJulia() {
+    return this.julia;
+  }
+
+  public double getJuliaAngle() {
+    return this.juliaAngle;
+  }
+
+  public Complex getJuliaConstant() {
+    return this.juliaConstant;
+  }
+
+  /**
+   * Two snapshots are equal when they produce exactly the same iteration
+   * counts. The Julia angle is ignored for the Mandelbrot set.
+   */
+  @Override
+  public boolean equals(Object o) {
+    if (this == o)
+      return true;
+    if (!(o instanceof RenderParams))
+      return false;
+    RenderParams p = (RenderParams) o;
+    return size == p.size && maxIter == p.maxIter && julia == p.julia
+        && view.equals(p.view)
+        && (!julia || Double.compare(juliaAngle, p.juliaAngle) == 0);
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hash(size, view, maxIter, julia, julia ? juliaAngle : 0.0);
+  }
+}
@@ -0,0 +1,139 @@
+package mandelbrotset.render;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Renders the frames of a FrameSequence and hands them to a FrameSink in
+ * order, for numbered PNGs or an AnimatedGif.
+ * <p>
+ * Each frame is rendered on every core by the RenderEngine while the
+ * previous ones are encoded on a separate thread, so encoding (single
+ * threaded, and often as slow as rendering) overlaps with rendering instead
+ * of adding to it. Only a fixed number of frame buffers exist, and rendering
+ * waits for the encoder to give one back, so memory stays the same for any
+ * number of frames.
+ * <p>
+ * Long zooms can be resampled from an ExpMap instead, see renderExpMap().
+ */
+public class SequenceRenderer {
+
+  // Frames rendered but not yet encoded, plus the one being rendered
+  private static final int BUFFERS = 3;
+
+  /** Receives the finished frames, in order, on the encoder thread */
+  @FunctionalInterface
+  public interface FrameSink {
+    /** argb is only valid during the call */
+    void frame(int index, int[] argb, int size) throws IOException;
+  }
+
+  /** Fills argb with frame i, on the rendering thread */
+  @FunctionalInterface
+  private interface FrameSource {
+    void frame(int index, int[] argb);
+  }
+
+  /** Called on the rendering thread after each frame is rendered */
+  @FunctionalInterface
+  public interface Progress {
+    void frameDone(int done, int total);
+  }
+
+  private final RenderEngine engine;
+
+  public SequenceRenderer(RenderEngine engine) {
+    this.engine = engine;
+  }
+
+  /**
+   * Render every frame of the sequence into sink, blocking until the last one
+   * is encoded. Stops at the first frame the sink fails on.
+   *
+   * @param palette Colors for every frame, built for the sequence's maxIter
+   */
+  public void render(FrameSequence sequence, Palette palette, FrameSink sink, Progress progress)
+      throws IOException {
+    int size = sequence.getSize();
+    int[] counts = new int[size * size];
+    stream(sequence, (i, argb) -> engine.render(sequence.frame(i), palette, counts, argb, TileRenderer.NO_MONITOR),
+        sink, progress);
+  }
+
+  /**
+   * Like render(), but every frame is resampled from one exponential map of
+   * the zoom, so each point is iterated about once instead of once per frame.
+   * For zooms without a Julia angle sweep. Frames are slightly softer. The
+   * strip is iterated on the engine's workers, and each frame counts in its
+   * stats and metrics like a rendered one.
+   *
+   * @return the map, for its stats
+   */
+  public ExpMap renderExpMap(FrameSequence sequence, Palette palette, FrameSink sink, Progress progress)
+      throws IOException {
+    ExpMap map = new ExpMap(sequence, engine.getTiles());
+    stream(sequence, (i, argb) -> engine.renderExpMap(map, i, palette, argb), sink, progress);
+    return map;
+  }
+
+  /** Produce every frame with source and encode it with sink, overlapping the two */
+  private static void stream(FrameSequence sequence, FrameSource source, FrameSink sink, Progress progress)
+      throws IOException {
+    int size = sequence.getSize();
+    ArrayBlockingQueue<int[]> free = new ArrayBlockingQueue<>(BUFFERS);
+    for (int i = 0; i < BUFFERS; i++)
+      free.add(new int[size * size]);
+
+    ExecutorService encoder = Executors.newSingleThreadExecutor(r -> {
+      Thread t = new Thread(r, "Frame encoder");
+      t.setDaemon(true);
+      return t;
+    });
+    // Never more than BUFFERS of these, one per buffer in use
+    ArrayDeque<Future<?>> pending = new ArrayDeque<>();
+    try {
+      for (int i = 0; i < sequence.getFrames(); i++) {
+        int[] argb = free.take();
+        // Report encoder errors as soon as they happen, not at the end
+        while (!pending.isEmpty() && pending.peekFirst().isDone())
+          check(pending.removeFirst());
+
+        source.frame(i, argb);
+        progress.frameDone(i + 1, sequence.getFrames());
+
+        int index = i;
+        pending.addLast(encoder.submit(() -> {
+          try {
+            sink.frame(index, argb, size);
+          } finally {
+            free.add(argb);
+          }
+          return null;
+        }));
+      }
+      while (!pending.isEmpty())
+        check(pending.removeFirst());
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted", e);
+    } finally {
+      encoder.shutdownNow();
+    }
+  }
+
+  /** Wait for an encoded frame, rethrowing what the sink threw */
+  private static void check(Future<?> frame) throws IOException, InterruptedException {
+    try {
+      frame.get();
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof IOException)
+        throw (IOException) e.getCause();
+      throw new IOException(e.getCause());
+    }
+  }
+}
@@ -0,0 +1,180 @@
+package mandelbrotset.render;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.math.RoundingMode;
+
+/**
+ * Which pixels of a frame are mirror images of other pixels of the same
+ * frame, so only one of each pair needs iterating.
+ * <p>
+ * The Mandelbrot set is symmetric across the real axis (c and its conjugate
+ * escape alike), and every Julia set is symmetric under a half turn around
+ * 0 (z and -z have the same square). When the view's center is a whole
+ * number of pixels from the axis (or from 0, for Julia sets) the pixel grid
+ * maps onto itself, and every pixel whose partner comes earlier in the frame
+ * is copied from it.
+ * <p>
+ * Only partners whose coordinates are exactly each other's mirror image in
+ * doubles are copied, so frames come out bit for bit the same as without.
+ * RenderParams.toIm() rounds about half the rows one ulp off their mirror
+ * image, which leaves about a quarter of the default Mandelbrot view to copy
+ * (half of the mirrored half) and less for Julia sets, which need the column
+ * exact as well. Deep zooms measure pixels from the center, which mirrors
+ * exactly, so a deep zoom centered on the real axis copies half the frame.
+ */
+public class Symmetry {
+
+  // The same tolerance PixelReuse uses for whole pixel pans
+  private static final BigDecimal TOLERANCE = new BigDecimal("1E-6");
+
+  private final int size;
+  // Pixel (Px, Py) is the image of (mx - Px, my - Py), or (Px, my - Py) without the half turn
+  private final boolean halfTurn;
+  private final int mx;
+  private final int my;
+  // Mirrored columns of each row, from copyStart to copyEnd (exclusive)
+  private final int[] copyStart;
+  private final int[] copyEnd;
+  // Columns that mirror exactly, or null if all do
+  private final boolean[] exactColumns;
+
+  private Symmetry(int size, boolean halfTurn, int mx, int my, boolean[] exactRows, boolean[] exactColumns) {
+    this.size = size;
+    this.halfTurn = halfTurn;
+    this.mx = mx;
+    this.my = my;
+    this.copyStart = new int[size];
+    this.copyEnd = new int[size];
+    this.exactColumns = exactColumns;
+
+    // Partners of the columns lo to hi are in the frame as well
+    int lo = halfTurn ? Math.max(0, mx - size + 1) : 0;
+    int hi = halfTurn ? Math.min(size - 1, mx) : size - 1;
+    for (int Py = 0; Py < size; Py++) {
+      int partner = my - Py;
+      if (partner < 0 || partner >= size || partner > Py || lo > hi || (exactRows != null && !exactRows[Py])) {
+        continue;
+      } else if (partner < Py) {
+        copyStart[Py] = lo;
+        copyEnd[Py] = hi + 1;
+      } else if (halfTurn) {
+        // The row through the center of the half turn copies its own left half
+        copyStart[Py] = Math.max(lo, mx / 2 + 1);
+        copyEnd[Py] = Math.max(copyStart[Py], hi + 1);
+      }
+    }
+  }
+
+  /**
+   * The pixels of p that mirror others, or null if none do (the center is
+   * not a whole number of pixels from the axis, or the mirror image is
+   * outside the frame)
+   */
+  public static Symmetry of(RenderParams p) {
+    int size = p.getSize();
+    BigDecimal radius = p.getView().getRadius();
+    if (RenderEngine.precisionFor(p) != RenderEngine.Precision.DOUBLE) {
+      // Pixel offsets mirror exactly, but the reference orbit only does for
+      // a Mandelbrot center on the real axis
+      if (p.isJulia() || p.getView().getCenterY().signum() != 0)
+        return null;
+      Symmetry s = new Symmetry(size, false, 0, size, null, null);
+      return s.isEmpty() ? null : s;
+    }
+
+    // toIm(Py) = -toIm(my - Py) for my = size - centerY·size / radius, give
+    // or take rounding. The same for columns
+    Integer my = mirror(p.getView().getCenterY(), radius, size);
+    if (my == null)
+      return null;
+    boolean[] exactRows = new boolean[size];
+    for (int Py = 0; Py < size; Py++)
+      exactRows[Py] = p.toIm(my - Py) == -p.toIm(Py);
+    Symmetry s;
+    if (p.isJulia()) {
+      Integer mx = mirror(p.getView().getCenterX(), radius, size);
+      if (mx == null)
+        return null;
+      boolean[] exactColumns = new boolean[size];
+      for (int Px = 0; Px < size; Px++)
+        exactColumns[Px] = p.toReal(mx - Px) == -p.toReal(Px);
+      s = new Symmetry(size, true, mx, my, exactRows, exactColumns);
+    } else {
+      s = new Symmetry(size, false, 0, my, exactRows, null);
+    }
+    return s.isEmpty() ? null : s;
+  }
+
+  /** size - center·size / radius if that is a whole number that mirrors part of the frame */
+  private static Integer mirror(BigDecimal center, BigDecimal radius, int size) {
+    BigDecimal shift = center.multiply(BigDecimal.valueOf(size)).divide(radius, MathContext.DECIMAL64);
+    BigDecimal k = shift.setScale(0, RoundingMode.HALF_EVEN);
+    if (shift.subtract(k).abs().compareTo(TOLERANCE) > 0 || k.abs().compareTo(BigDecimal.valueOf(size)) >= 0)
+      return null;
+    return size - k.intValue();
+  }
+
+  private boolean isEmpty() {
+    for (int Py = 0; Py < size; Py++) {
+      for (int Px = copyStart[Py]; Px < copyEnd[Py]; Px++) {
+        if (exactColumns == null || exactColumns[Px])
+          return false;
+      }
+    }
+    return true;
+  }
+
+  /** true if pixel (Px, Py) is copied from its mirror image instead of iterated */
+  public boolean isCopied(int Px, int Py) {
+    return Px >= copyStart[Py] && Px < copyEnd[Py] && (exactColumns == null || exactColumns[Px]);
+  }
+
+  /** First column from Px on in row Py that is copied, or x1 if there is none before it */
+  public int nextCopied(int Px, int Py, int x1) {
+    while (Px < x1 && !isCopied(Px, Py))
+      Px++;
+    return Px;
+  }
+
+  /** First column from Px on in row Py that is iterated, or x1 if there is none before it */
+  public int nextIterated(int Px, int Py, int x1) {
+    while (Px < x1 && isCopied(Px, Py))
+      Px++;
+    return Px;
+  }
+
+  /** Column of the pixel that pixel (Px, Py) mirrors, which may be outside the frame */
+  public int partnerX(int Px) {
+    return halfTurn ? mx - Px : Px;
+  }
+
+  /** Row of the pixel that pixel (Px, Py) mirrors, which may be outside the frame */
+  public int partnerY(int Py) {
+    return my - Py;
+  }
+
+  /** true if every pixel of the tile is copied */
+  public boolean isCopied(int x0, int y0, int x1, int y1) {
+    for (int Py = y0; Py < y1; Py++) {
+      if (nextIterated(x0, Py, x1) < x1)
+        return false;
+    }
+    return true;
+  }
+
+  /** Copy every copied pixel from its mirror image, counts and colors both, once the rest is done */
+  public void copy(int[] counts, int[] argb) {
+    for (int Py = 0; Py < size; Py++) {
+      int row = Py * size;
+      int from = (my - Py) * size;
+      for (int Px = copyStart[Py]; Px < copyEnd[Py]; Px++) {
+        if (exactColumns != null && !exactColumns[Px])
+          continue;
+        int at = from + (halfTurn ? mx - Px : Px);
+        counts[row + Px] = counts[at];
+        argb[row + Px] = argb[at];
+      }
+    }
+  }
+}
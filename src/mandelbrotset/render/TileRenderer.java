@@ -0,0 +1,301 @@
+package mandelbrotset.render;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Splits a square frame into tiles and fills them in parallel.
+ * <p>
+ * Tiles are handed to a ForkJoinPool as a recursive split of the tile list, so
+ * idle workers steal the remaining halves from busy ones. This keeps every core
+ * busy even when some tiles (full of the set) are far more expensive than
+ * others. When the caller can estimate what each tile costs (from the frame
+ * before, say) the list is split where the cost, not the number of tiles, is
+ * halved, so the first splits already hand every worker about the same
+ * amount of work and little is left to steal. The time each worker spends in
+ * tiles is added up in getLoad().
+ * <p>
+ * This class has no JavaFX dependency. Results are written to a plain int[]
+ * buffer, row-major: ARGB colors the caller can upload in one bulk write, or
+ * iteration counts to color later.
+ * Algorithms that need a whole region at a time can supply a TileFunction
+ * instead of a per-pixel function.
+ */
+public class TileRenderer {
+
+  /** Edge length of one square tile in pixels */
+  public static final int TILE_SIZE = 64;
+
+  // One shared pool for every renderer, sized to the machine.
+  // ForkJoinPool worker threads are daemons, so they never keep the app alive
+  private static final ForkJoinPool POOL = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+
+  /** Computes the value of a single pixel, its color or iteration count. Must be thread safe. */
+  @FunctionalInterface
+  public interface PixelFunction {
+    int compute(int Px, int Py);
+  }
+
+  /**
+   * Renders a whole tile, for algorithms that work on regions rather than
+   * single pixels. Bounds are in pixels, x1 and y1 exclusive. Must be thread
+   * safe, and must only write pixels inside its tile.
+   */
+  @FunctionalInterface
+  public interface TileFunction {
+    void render(int x0, int y0, int x1, int y1);
+  }
+
+  /**
+   * Observes a render in progress. Both methods are called from worker threads.
+   */
+  public interface Monitor {
+    /** Checked before each tile is started. Returning true skips all remaining tiles */
+    boolean isCancelled();
+
+    /** Called after each tile finishes with the running count of finished tiles */
+    void tileDone(int done, int total);
+  }
+
+  /** For callers that do not care about progress or cancelling */
+  public static final Monitor NO_MONITOR = new Monitor() {
+    @Override
+    public boolean isCancelled() {
+      return false;
+    }
+
+    @Override
+    public void tileDone(int done, int total) {
+    }
+  };
+
+  private final ForkJoinPool pool;
+  private final WorkerLoad load;
+
+  /** Creates a renderer backed by the shared pool (one worker per core) */
+  public TileRenderer() {
+    this(POOL);
+  }
+
+  public TileRenderer(ForkJoinPool pool) {
+    this.pool = pool;
+    this.load = new WorkerLoad(pool.getParallelism());
+  }
+
+  /**
+   * Fill every pixel of a size x size frame, blocking until it is done.
+   *
+   * @param out  Output buffer of at least size * size ints, row-major
+   * @param size Width and height of the frame in pixels
+   * @param fn   The per-pixel function
+   */
+  public void render(int[] out, int size, PixelFunction fn) {
+    render(out, size, fn, NO_MONITOR);
+  }
+
+  /**
+   * Fill every pixel of a size x size frame, blocking until it is done or
+   * cancelled. Tiles already started when the monitor cancels still finish,
+   * but no new ones are begun.
+   *
+   * @return true if every tile was rendered, false if the render was cancelled
+   */
+  public boolean render(int[] out, int size, PixelFunction fn, Monitor monitor) {
+    return render(size, (x0, y0, x1, y1) -> {
+      for (int Py = y0; Py < y1; Py++) {
+        int row = Py * size;
+        for (int Px = x0; Px < x1; Px++) {
+          out[row + Px] = fn.compute(Px, Py);
+        }
+      }
+    }, monitor);
+  }
+
+  /**
+   * Run fn once for every tile of a size x size frame, blocking until it is
+   * done or cancelled.
+   *
+   * @return true if every tile was rendered, false if the render was cancelled
+   */
+  public boolean render(int size, TileFunction fn, Monitor monitor) {
+    return render(size, size, fn, monitor);
+  }
+
+  /** Run fn once for every tile of a width x height region, see render(size, fn, monitor) */
+  public boolean render(int width, int height, TileFunction fn, Monitor monitor) {
+    return render(width, height, fn, monitor, null);
+  }
+
+  /**
+   * Run fn once for every tile of a width x height region, splitting the
+   * tiles by their estimated cost.
+   *
+   * @param costs Estimated cost of every tile, in any unit, in the order
+   *              tileIndex() numbers them. null splits by number of tiles
+   * @return true if every tile was rendered, false if the render was cancelled
+   */
+  public boolean render(int width, int height, TileFunction fn, Monitor monitor, long[] costs) {
+    WorkerLoad.Frame frame = load.newFrame();
+    boolean done = render(width, height, fn, monitor, costs, frame);
+    load.add(frame);
+    return done;
+  }
+
+  /**
+   * Run fn once for every tile of a width x height region as one pass of a
+   * frame, adding the time each worker spends in tiles to load. The caller
+   * adds the frame to getLoad() once all its passes are done.
+   *
+   * @param load The frame's busy times, or null for work that isn't part of
+   *             any frame
+   */
+  boolean render(int width, int height, TileFunction fn, Monitor monitor, long[] costs, WorkerLoad.Frame load) {
+    Frame frame = new Frame(this, width, height, fn, monitor, costs, load);
+    long start = System.nanoTime();
+    pool.invoke(new TileRange(frame, 0, frame.total));
+    if (load != null)
+      load.wall += System.nanoTime() - start;
+    return frame.done.get() == frame.total;
+  }
+
+  /** Index of the tile pixel (x0, y0) is in, in a region width pixels wide */
+  public static int tileIndex(int width, int x0, int y0) {
+    return (y0 / TILE_SIZE) * ((width + TILE_SIZE - 1) / TILE_SIZE) + x0 / TILE_SIZE;
+  }
+
+  /** Number of tiles a width x height region is split into */
+  public static int tileCount(int width, int height) {
+    return ((width + TILE_SIZE - 1) / TILE_SIZE) * ((height + TILE_SIZE - 1) / TILE_SIZE);
+  }
+
+  /** Number of tiles a size x size frame is split into */
+  public static int tileCount(int size) {
+    return tileCount(size, size);
+  }
+
+  /** Number of worker threads tiles are spread over */
+  public int getParallelism() {
+    return pool.getParallelism();
+  }
+
+  /**
+   * Busy time of every worker over the frames rendered so far. Call reset()
+   * on it to start counting from zero.
+   */
+  public WorkerLoad getLoad() {
+    return this.load;
+  }
+
+
+  /** State shared by every tile of one frame */
+  private static class Frame {
+    final TileRenderer renderer;
+    final int width;
+    final int height;
+    final int tilesPerRow;
+    final int total;
+    final TileFunction fn;
+    final Monitor monitor;
+    final AtomicInteger done = new AtomicInteger();
+    // Cost of tiles 0 to i (exclusive) at i, or null to split by count
+    final long[] prefix;
+    // Busy time of the frame this is a pass of, or null
+    final WorkerLoad.Frame load;
+
+    Frame(TileRenderer renderer, int width, int height, TileFunction fn, Monitor monitor, long[] costs,
+        WorkerLoad.Frame load) {
+      this.renderer = renderer;
+      this.width = width;
+      this.height = height;
+      this.tilesPerRow = (width + TILE_SIZE - 1) / TILE_SIZE;
+      this.total = tileCount(width, height);
+      this.fn = fn;
+      this.monitor = monitor;
+      this.load = load;
+      if (costs == null) {
+        this.prefix = null;
+      } else {
+        if (costs.length != total)
+          throw new IllegalArgumentException("Expected " + total + " tile costs, got " + costs.length);
+        this.prefix = new long[total + 1];
+        for (int i = 0; i < total; i++)
+          prefix[i + 1] = prefix[i] + Math.max(0, costs[i]);
+      }
+    }
+
+    /** Slot of the current thread: the next free worker slot, or the ones for other and spare threads */
+    int slot() {
+      Thread t = Thread.currentThread();
+      WorkerLoad totals = renderer.load;
+      if (!(t instanceof ForkJoinWorkerThread) || ((ForkJoinWorkerThread) t).getPool() != renderer.pool)
+        return totals.otherSlot();
+      return load.slots.computeIfAbsent(t, k -> {
+        int slot = load.nextSlot.getAndIncrement();
+        return slot < totals.getWorkers() ? slot : totals.spareSlot();
+      });
+    }
+
+    /** Where to split tiles from to to (exclusive, at least 2 of them) into two halves of about the same cost */
+    int split(int from, int to) {
+      if (prefix == null || prefix[to] == prefix[from])
+        return (from + to) >>> 1;
+      // First tile whose cost reaches past the middle, the split is before or after it
+      long half = prefix[from] + (prefix[to] - prefix[from]) / 2;
+      int lo = from + 1;
+      int hi = to;
+      while (lo < hi) {
+        int mid = (lo + hi) >>> 1;
+        if (prefix[mid] < half)
+          lo = mid + 1;
+        else
+          hi = mid;
+      }
+      if (lo > from + 1 && half - prefix[lo - 1] < prefix[lo] - half)
+        lo--;
+      return Math.min(lo, to - 1);
+    }
+  }
+
+  /** A contiguous run of tile indices, split in halves of equal cost until only one tile is left */
+  private static class TileRange extends RecursiveAction {
+    private static final long serialVersionUID = 1L;
+
+    private final Frame frame;
+    private final int from;
+    private final int to;
+
+    TileRange(Frame frame, int from, int to) {
+      this.frame = frame;
+      this.from = from;
+      this.to = to;
+    }
+
+    @Override
+    protected void compute() {
+      if (frame.monitor.isCancelled())
+        return;
+
+      if (to - from > 1) {
+        int mid = frame.split(from, to);
+        invokeAll(new TileRange(frame, from, mid), new TileRange(frame, mid, to));
+        return;
+      }
+      // Pixel bounds of this tile, clipped to the frame edge
+      int x0 = (from % frame.tilesPerRow) * TILE_SIZE;
+      int y0 = (from / frame.tilesPerRow) * TILE_SIZE;
+      int x1 = Math.min(x0 + TILE_SIZE, frame.width);
+      int y1 = Math.min(y0 + TILE_SIZE, frame.height);
+
+      long start = System.nanoTime();
+      frame.fn.render(x0, y0, x1, y1);
+      if (frame.load != null) {
+        int slot = frame.slot();
+        frame.load.busy.addAndGet(slot, System.nanoTime() - start);
+        frame.load.tiles.incrementAndGet(slot);
+      }
+      frame.monitor.tileDone(frame.done.incrementAndGet(), frame.total);
+    }
+  }
+}
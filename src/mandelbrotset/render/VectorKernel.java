@@ -0,0 +1,131 @@
+package mandelbrotset.render;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * SIMD version of the escape time loop, using the incubating Vector API.
+ * <p>
+ * A whole vector of horizontally adjacent pixels (4 doubles with AVX2, 8 with
+ * AVX-512) is iterated at once. Lanes that escape are masked off and keep
+ * their count while the others carry on, and the loop ends when no lane is
+ * left. Every lane does exactly the same double operations, in the same
+ * order, as FractalKernel.checkConvergence(), so counts are identical.
+ * <p>
+ * Only load this class when the jdk.incubator.vector module is present, see
+ * RenderEngine.isVectorAvailable(). It needs
+ * {@code --add-modules jdk.incubator.vector} at compile and run time.
+ */
+public class VectorKernel {
+
+  private static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+
+  // 0, 1, 2, ... one per lane, to build pixel columns from
+  private static final DoubleVector IOTA;
+  static {
+    double[] iota = new double[SPECIES.length()];
+    for (int i = 0; i < iota.length; i++)
+      iota[i] = i;
+    IOTA = DoubleVector.fromArray(SPECIES, iota, 0);
+  }
+
+  private VectorKernel() {
+  }
+
+  /** Number of pixels computed per vector */
+  public static int lanes() {
+    return SPECIES.length();
+  }
+
+  /**
+   * Iteration counts for pixels x0 to x1 (exclusive) of row Py, written to
+   * counts starting at the pixel's row-major index.
+   */
+  public static void iterateRow(RenderParams p, int Py, int x0, int x1, int[] counts, KernelStats stats) {
+    iterateRow(p, Py, x0, x1, counts, Py * p.getSize(), stats);
+  }
+
+  /** Like iterateRow(), with pixel (0, Py) at counts[row], for buffers holding part of a frame */
+  public static void iterateRow(RenderParams p, int Py, int x0, int x1, int[] counts, int row, KernelStats stats) {
+    int size = p.getSize();
+    int maxIter = p.getMaxIter();
+    boolean julia = p.isJulia();
+
+    // The same terms RenderParams.toReal() uses, so every lane gets the same c
+    double twoRadius = 2 * p.getRadius();
+    double left = p.getCenterX() - p.getRadius();
+    double im = p.toIm(Py);
+    double kr = p.getJuliaConstant().getReal();
+    double ki = p.getJuliaConstant().getIm();
+
+    int lanes = SPECIES.length();
+    double[] steps = new double[lanes];
+
+    for (int Px = x0; Px < x1; Px += lanes) {
+      VectorMask<Double> inRange = SPECIES.indexInRange(Px, x1);
+      DoubleVector re = IOTA.add(Px).mul(twoRadius).div(size).add(left);
+
+      // Mandelbrot: z = 0, c = pixel. Julia: z = pixel, c = constant
+      DoubleVector z, zi, c, ci;
+      VectorMask<Double> active = inRange;
+      DoubleVector count = DoubleVector.zero(SPECIES);
+      if (julia) {
+        z = re;
+        zi = DoubleVector.broadcast(SPECIES, im);
+        c = DoubleVector.broadcast(SPECIES, kr);
+        ci = DoubleVector.broadcast(SPECIES, ki);
+      } else {
+        z = DoubleVector.zero(SPECIES);
+        zi = DoubleVector.zero(SPECIES);
+        c = re;
+        ci = DoubleVector.broadcast(SPECIES, im);
+
+        // Lanes in the main cardioid or period-2 bulb never escape, same
+        // tests as FractalKernel.checkMandelbrot()
+        DoubleVector x = re.sub(0.25);
+        DoubleVector q = x.mul(x).add(ci.mul(ci));
+        VectorMask<Double> cardioid = q.mul(q.add(x)).compare(VectorOperators.LE, ci.mul(0.25).mul(ci))
+            .and(inRange);
+        DoubleVector b = re.add(1);
+        VectorMask<Double> bulb = b.mul(b).add(ci.mul(ci)).compare(VectorOperators.LE, 0.0625)
+            .and(inRange).andNot(cardioid);
+        VectorMask<Double> inside = cardioid.or(bulb);
+        if (inside.anyTrue()) {
+          count = count.blend((double) (maxIter + 1), inside);
+          active = active.andNot(inside);
+          stats.cardioid += cardioid.trueCount();
+          stats.bulb += bulb.trueCount();
+          // These lanes did not iterate at all
+          stats.iterations -= (long) inside.trueCount() * (maxIter + 1);
+        }
+      }
+
+      // All active lanes have done exactly iter steps
+      for (int iter = 0; iter <= maxIter; iter++) {
+        // |Z| must remain <= 2 in every iteration
+        active = active.and(z.mul(z).add(zi.mul(zi)).compare(VectorOperators.LE, 4.0));
+        if (!active.anyTrue())
+          break;
+        // Re(z^2 + c) and Im(z^2 + c), for active lanes only
+        DoubleVector zT = z.mul(z).sub(zi.mul(zi)).add(c);
+        DoubleVector ziT = z.mul(2.0).mul(zi).add(ci);
+        z = z.blend(zT, active);
+        zi = zi.blend(ziT, active);
+        count = count.add(1.0, active);
+      }
+
+      count.intoArray(steps, 0);
+      int n = Math.min(lanes, x1 - Px);
+      for (int i = 0; i < n; i++) {
+        int s = (int) steps[i];
+        counts[row + Px + i] = s;
+        stats.iterations += s;
+        if (s > maxIter)
+          stats.interior++;
+      }
+      stats.pixels += n;
+    }
+  }
+}
@@ -0,0 +1,127 @@
+package mandelbrotset.render;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.math.RoundingMode;
+
+/**
+ * Where the view is: the center point and radius of the square window on the
+ * complex plane, held as BigDecimal so deep zoom locations survive being
+ * stored, typed in and passed around.
+ * <p>
+ * Immutable, every zoom or pan returns a new ViewState. Kernels read it at the
+ * precision they need, doubles for shallow views (see RenderParams) and
+ * full precision for the perturbation reference orbit.
+ * <p>
+ * The serialized form is "X,Y,R", e.g. {@code -0.743643887037151,0.13182590420533,1E-20}.
+ * It is what toString() returns and parse() reads, and what BatchRenderer's
+ * --view option takes.
+ */
+public class ViewState {
+
+  // The radius is only a scale, this is plenty and keeps it from growing a
+  // digit with every zoom step
+  private static final MathContext RADIUS_PRECISION = MathContext.DECIMAL128;
+
+  // Pan results are kept to this many digits below the radius, a millionth of
+  // a pixel or better at any image size
+  private static final int POSITION_DIGITS = 12;
+
+  private final BigDecimal centerX;
+  private final BigDecimal centerY;
+  private final BigDecimal radius;
+
+  public ViewState(BigDecimal centerX, BigDecimal centerY, BigDecimal radius) {
+    if (radius.signum() <= 0)
+      throw new IllegalArgumentException("Radius must be positive: " + radius);
+    this.centerX = centerX;
+    this.centerY = centerY;
+    this.radius = radius;
+  }
+
+  /** A view from double coordinates, taking each at the decimal value it is printed as */
+  public ViewState(double centerX, double centerY, double radius) {
+    this(BigDecimal.valueOf(centerX), BigDecimal.valueOf(centerY), BigDecimal.valueOf(radius));
+  }
+
+  /** Read the "X,Y,R" form written by toString() */
+  public static ViewState parse(String s) {
+    String[] parts = s.trim().split(",");
+    if (parts.length != 3)
+      throw new IllegalArgumentException("View must be X,Y,R: " + s);
+    try {
+      return new ViewState(new BigDecimal(parts[0].trim()), new BigDecimal(parts[1].trim()),
+          new BigDecimal(parts[2].trim()));
+    } catch (NumberFormatException e) {
+      throw new IllegalArgumentException("Bad number in view: " + s);
+    }
+  }
+
+  /** The same center with the radius multiplied by factor (below 1 zooms in) */
+  public ViewState zoom(double factor) {
+    return new ViewState(centerX, centerY, radius.multiply(BigDecimal.valueOf(factor), RADIUS_PRECISION));
+  }
+
+  /** The same radius around a new center */
+  public ViewState moveTo(BigDecimal x, BigDecimal y) {
+    return new ViewState(x, y, radius);
+  }
+
+  /** The same radius, centered on pixel (Px, Py) of a size x size image of this view */
+  public ViewState centerOn(double Px, double Py, int size) {
+    return moveTo(toReal(Px, size), toIm(Py, size));
+  }
+
+  /** Real part of the point at pixel column Px, at full precision */
+  public BigDecimal toReal(double Px, int size) {
+    return position(centerX, Px, size);
+  }
+
+  /** Imaginary part of the point at pixel row Py, at full precision */
+  public BigDecimal toIm(double Py, int size) {
+    return position(centerY, Py, size);
+  }
+
+  // center + (2P - size) / size * radius, the same offset PerturbationKernel uses
+  private BigDecimal position(BigDecimal center, double P, int size) {
+    int scale = POSITION_DIGITS - (radius.precision() - radius.scale());
+    BigDecimal offset = radius.multiply(BigDecimal.valueOf(2 * P - size))
+        .divide(BigDecimal.valueOf(size), scale, RoundingMode.HALF_EVEN);
+    return center.add(offset).stripTrailingZeros();
+  }
+
+  public BigDecimal getCenterX() {
+    return this.centerX;
+  }
+
+  public BigDecimal getCenterY() {
+    return this.centerY;
+  }
+
+  public BigDecimal getRadius() {
+    return this.radius;
+  }
+
+  /** Views are equal when they describe the same window, however the numbers are written */
+  @Override
+  public boolean equals(Object o) {
+    if (this == o)
+      return true;
+    if (!(o instanceof ViewState))
+      return false;
+    ViewState v = (ViewState) o;
+    return centerX.compareTo(v.centerX) == 0 && centerY.compareTo(v.centerY) == 0 && radius.compareTo(v.radius) == 0;
+  }
+
+  @Override
+  public int hashCode() {
+    return 31 * (31 * centerX.stripTrailingZeros().hashCode() + centerY.stripTrailingZeros().hashCode())
+        + radius.stripTrailingZeros().hashCode();
+  }
+
+  /** The serialized "X,Y,R" form */
+  @Override
+  public String toString() {
+    return centerX + "," + centerY + "," + radius;
+  }
+}
@@ -0,0 +1,203 @@
+package mandelbrotset.render;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * How busy each worker of a TileRenderer was, to check that tiles are spread
+ * evenly over the cores.
+ * <p>
+ * A frame is everything RenderEngine tiles for one image, all its passes
+ * added up, or a single TileRenderer.render() call of another caller.
+ * Frames that run no tiles (found in the cache, say) aren't counted. Busy
+ * time is the time spent inside tiles, wall time the time spent running
+ * them. A worker that is busy for much less than the wall time waited for
+ * the others to finish, so the balance of a frame (mean busy time over the
+ * busiest worker's) shows how much of the machine it really used.
+ * getBalance() is the mean of that over the frames.
+ * <p>
+ * The pool may run a frame on other threads than the one before, so the
+ * busy times and tiles are kept by rank rather than by thread: rank 0 adds up
+ * the busiest worker of every frame, rank 1 the next, and so on. That shows
+ * how uneven frames are, but a hot spot moving from thread to thread looks
+ * the same as one that stays, so balance is taken per frame, not from these
+ * sums. Tiles run by threads outside the pool (the caller can help with its
+ * own frame) are counted as one extra worker, and so are tiles run by pool
+ * threads beyond its parallelism (spares the pool starts while a worker
+ * blocks).
+ */
+public class WorkerLoad {
+
+  // One slot per worker by rank, then otherSlot() for threads outside the
+  // pool and spareSlot() for extra pool threads
+  private final long[] busy;
+  private final long[] tiles;
+  private long wall;
+  private long frames;
+  // Balance of every frame, added up
+  private double balances;
+
+  WorkerLoad(int workers) {
+    this.busy = new long[workers + 2];
+    this.tiles = new long[workers + 2];
+  }
+
+  /** Slot of threads outside the pool */
+  int otherSlot() {
+    return getWorkers();
+  }
+
+  /** Slot of pool threads beyond its parallelism */
+  int spareSlot() {
+    return getWorkers() + 1;
+  }
+
+  /** Number of slots, for the arrays add() takes */
+  int slots() {
+    return this.busy.length;
+  }
+
+  /** A new empty frame, for passes to add their tiles to */
+  Frame newFrame() {
+    return new Frame(getWorkers());
+  }
+
+  /** Add up one finished frame, unless it ran no tiles */
+  void add(Frame frame) {
+    // Workers by rank, busiest first, then the slots for other threads. The
+    // frame's balance is taken before the ranks are added up
+    int workers = getWorkers();
+    Integer[] rank = new Integer[workers];
+    for (int i = 0; i < workers; i++)
+      rank[i] = i;
+    Arrays.sort(rank, (a, b) -> Long.compare(frame.busy.get(b), frame.busy.get(a)));
+    long[] busy = new long[slots()];
+    long[] tiles = new long[busy.length];
+    long ran = 0;
+    for (int i = 0; i < busy.length; i++) {
+      int slot = i < workers ? rank[i] : i;
+      busy[i] = frame.busy.get(slot);
+      tiles[i] = frame.tiles.get(slot);
+      ran += tiles[i];
+    }
+    if (ran == 0)
+      return;
+
+    synchronized (this) {
+      for (int i = 0; i < this.busy.length; i++) {
+        this.busy[i] += busy[i];
+        this.tiles[i] += tiles[i];
+      }
+      this.wall += frame.wall;
+      this.frames++;
+      this.balances += balance(busy);
+    }
+  }
+
+  /** A consistent copy of the current values */
+  public synchronized WorkerLoad snapshot() {
+    WorkerLoad copy = new WorkerLoad(getWorkers());
+    System.arraycopy(this.busy, 0, copy.busy, 0, this.busy.length);
+    System.arraycopy(this.tiles, 0, copy.tiles, 0, this.tiles.length);
+    copy.wall = this.wall;
+    copy.frames = this.frames;
+    copy.balances = this.balances;
+    return copy;
+  }
+
+  public synchronized void reset() {
+    Arrays.fill(this.busy, 0);
+    Arrays.fill(this.tiles, 0);
+    this.wall = this.frames = 0;
+    this.balances = 0;
+  }
+
+  /** Number of pool workers, not counting the slots for other and spare threads */
+  public int getWorkers() {
+    return this.busy.length - 2;
+  }
+
+  /**
+   * Nanoseconds the i-th busiest worker of each frame spent in tiles, added
+   * up, so rank i rather than any one thread. i == getWorkers() for threads
+   * outside the pool, getWorkers() + 1 for spare pool threads
+   */
+  public synchronized long getBusyNanos(int i) {
+    return this.busy[i];
+  }
+
+  /** Tiles run by the worker of rank i, numbered as for getBusyNanos() */
+  public synchronized long getTiles(int i) {
+    return this.tiles[i];
+  }
+
+  /** Nanoseconds from the start to the end of every frame, added up */
+  public synchronized long getWallNanos() {
+    return this.wall;
+  }
+
+  public synchronized long getFrames() {
+    return this.frames;
+  }
+
+  /**
+   * Mean over the frames of the workers' mean busy time over the busiest
+   * one's, 1 when in every frame every worker was busy for as long as the
+   * others
+   */
+  public synchronized double getBalance() {
+    return this.frames == 0 ? 1 : this.balances / this.frames;
+  }
+
+  /** Balance of one frame's busy times, the other and spare slots only counting when used */
+  private double balance(long[] busy) {
+    long max = 0;
+    long sum = 0;
+    int workers = 0;
+    for (int i = 0; i < busy.length; i++) {
+      if (i < getWorkers() || busy[i] > 0) {
+        max = Math.max(max, busy[i]);
+        sum += busy[i];
+        workers++;
+      }
+    }
+    return max == 0 ? 1 : (double) sum / workers / max;
+  }
+
+  /**
+   * Busy time and tiles of one frame, per slot, over every pass the frame
+   * makes over the tiles. A thread keeps its slot from pass to pass, so a
+   * worker that was busy in each pass is one busy worker of the frame.
+   */
+  static class Frame {
+    final AtomicLongArray busy;
+    final AtomicLongArray tiles;
+    // Slot of each pool thread, in the order they started on the frame. Pool
+    // indices aren't dense, so they can't be used directly
+    final ConcurrentHashMap<Thread, Integer> slots = new ConcurrentHashMap<>();
+    final AtomicInteger nextSlot = new AtomicInteger();
+    // Of the passes, which run one after the other
+    volatile long wall;
+
+    Frame(int workers) {
+      this.busy = new AtomicLongArray(workers + 2);
+      this.tiles = new AtomicLongArray(workers + 2);
+    }
+  }
+
+  @Override
+  public synchronized String toString() {
+    StringBuilder s = new StringBuilder();
+    s.append(String.format("%d workers, %.0f%% balanced, busy ms by rank of %d:", getWorkers(),
+        100 * getBalance(), this.wall / 1_000_000));
+    for (int i = 0; i < this.busy.length; i++) {
+      if (i < getWorkers())
+        s.append(' ').append(this.busy[i] / 1_000_000);
+      else if (this.busy[i] > 0)
+        s.append(" (+").append(this.busy[i] / 1_000_000).append(i == otherSlot() ? " caller)" : " spare)");
+    }
+    return s.toString();
+  }
+}
@@ -0,0 +1,150 @@
+package mandelbrotset.render;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class CountCacheTest {
+
+  private static final RenderEngine.Algorithm ALGORITHM = RenderEngine.Algorithm.BRUTE_FORCE;
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private static RenderParams params(String view, int maxIter) {
+    return new RenderParams(64, ViewState.parse(view), maxIter, false, 0);
+  }
+
+  /** Counts from 0 to maxIter + 1, all of them once the frame is big enough */
+  private static int[] counts(RenderParams p) {
+    int[] counts = new int[p.getSize() * p.getSize()];
+    for (int i = 0; i < counts.length; i++)
+      counts[i] = (int) ((i * 2654435761L) % (p.getMaxIter() + 2));
+    counts[0] = p.getMaxIter() + 1;
+    return counts;
+  }
+
+  /** A cache without the in-memory layer, so every hit is read from a file */
+  private CountCache diskOnly(long maxBytes) throws IOException {
+    return new CountCache(folder.getRoot(), maxBytes, 0);
+  }
+
+  private File[] files() {
+    return folder.getRoot().listFiles((d, name) -> name.endsWith(".counts"));
+  }
+
+  @Test
+  public void roundTripShortCounts() throws IOException, InterruptedException {
+    // Above 32767, so the shorts must be read back unsigned
+    assertRoundTrip(params("-0.5,0,1.5", 60000));
+  }
+
+  @Test
+  public void roundTripWideCounts() throws IOException, InterruptedException {
+    assertRoundTrip(params("-0.5,0,1.5", 70000));
+  }
+
+  /** Put counts in a new cache and wait for its file */
+  private void putAndWait(RenderParams p, int[] counts) throws IOException, InterruptedException {
+    CountCache cache = diskOnly(1 << 20);
+    cache.put(p, ALGORITHM, counts);
+    cache.awaitWrites();
+  }
+
+  private void assertRoundTrip(RenderParams p) throws IOException, InterruptedException {
+    int[] counts = counts(p);
+    putAndWait(p, counts);
+
+    // A new cache only has the file to go by
+    CountCache cache = diskOnly(1 << 20);
+    int[] read = new int[counts.length];
+    assertTrue(cache.get(p, ALGORITHM, read));
+    assertArrayEquals(counts, read);
+    assertEquals(1, cache.getDiskHits());
+  }
+
+  @Test
+  public void missesOtherKeys() throws IOException, InterruptedException {
+    RenderParams p = params("-0.5,0,1.5", 100);
+    CountCache cache = diskOnly(1 << 20);
+    cache.put(p, ALGORITHM, counts(p));
+    cache.awaitWrites();
+    int[] read = new int[64 * 64];
+    assertFalse(cache.get(params("-0.5,0,1.5", 101), ALGORITHM, read));
+    assertFalse(cache.get(p, RenderEngine.Algorithm.MARIANI_SILVER, read));
+    assertFalse(cache.get(params("-0.5,0.1,1.5", 100), ALGORITHM, read));
+    assertEquals(3, cache.getMisses());
+  }
+
+  @Test
+  public void hitsTheSameViewWrittenAtAnotherScale() throws IOException, InterruptedException {
+    RenderParams p = params("-0.5,0,1.5", 100);
+    CountCache cache = diskOnly(1 << 20);
+    cache.put(p, ALGORITHM, counts(p));
+    cache.awaitWrites();
+    int[] read = new int[64 * 64];
+    assertTrue(cache.get(params("-0.50,0.000,1.50", 100), ALGORITHM, read));
+    assertArrayEquals(counts(p), read);
+    assertEquals(1, files().length);
+  }
+
+  @Test
+  public void hitsFramesWaitingToBeWritten() throws IOException, InterruptedException {
+    RenderParams p = params("-0.5,0,1.5", 100);
+    CountCache cache = diskOnly(1 << 20);
+    cache.put(p, ALGORITHM, counts(p));
+    int[] read = new int[64 * 64];
+    assertTrue(cache.get(p, ALGORITHM, read));
+    assertArrayEquals(counts(p), read);
+
+    cache.awaitWrites();
+    assertEquals(1, files().length);
+    assertTrue(cache.getDiskBytes() > 0);
+  }
+
+  @Test
+  public void truncatedFileIsAMiss() throws IOException, InterruptedException {
+    RenderParams p = params("-0.5,0,1.5", 100);
+    putAndWait(p, counts(p));
+    File[] files = files();
+    assertEquals(1, files.length);
+    try (RandomAccessFile f = new RandomAccessFile(files[0], "rw")) {
+      f.setLength(f.length() - 100);
+    }
+
+    CountCache cache = diskOnly(1 << 20);
+    assertFalse(cache.get(p, ALGORITHM, new int[64 * 64]));
+    assertEquals(1, cache.getMisses());
+  }
+
+  @Test
+  public void evictsLeastRecentlyUsedOverMaxBytes() throws IOException, InterruptedException {
+    RenderParams a = params("-0.5,0,1.5", 100);
+    RenderParams b = params("-0.5,0,0.5", 100);
+    RenderParams c = params("-0.5,0,0.25", 100);
+    // Room for two frames of 64 x 64 shorts, not three
+    long maxBytes = 2 * (64 * 64 * 2 + 200);
+    CountCache cache = diskOnly(maxBytes);
+    int[] read = new int[64 * 64];
+    cache.put(a, ALGORITHM, counts(a));
+    cache.put(b, ALGORITHM, counts(b));
+    cache.awaitWrites();
+    assertTrue(cache.get(a, ALGORITHM, read));
+    cache.put(c, ALGORITHM, counts(c));
+    cache.awaitWrites();
+
+    assertEquals(2, files().length);
+    assertTrue(cache.getDiskBytes() <= maxBytes);
+    assertTrue(cache.get(a, ALGORITHM, read));
+    assertFalse(cache.get(b, ALGORITHM, read));
+    assertTrue(cache.get(c, ALGORITHM, read));
+  }
+}
@@ -0,0 +1,53 @@
+package mandelbrotset.render;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.ForkJoinPool;
+import javax.imageio.ImageIO;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class PosterTest {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  // Off the real axis, so render() has no mirror image to copy
+  private final RenderParams params = new RenderParams(300, -0.75, 0.1, 0.2, 500, false, 0);
+  private final Palette palette = new Palette(Palette.rgbToHsb(0xff0000), Palette.rgbToHsb(0x0000ff), false, 500);
+
+  @Test
+  public void bandsMatchOneFrame() throws IOException {
+    assertBandsMatch(false);
+  }
+
+  @Test
+  public void antialiasedBandsMatchOneFrame() throws IOException {
+    assertBandsMatch(true);
+  }
+
+  /** A poster of several bands, the last one shorter, is the image render() makes */
+  private void assertBandsMatch(boolean antialias) throws IOException {
+    RenderEngine engine = new RenderEngine(new TileRenderer(new ForkJoinPool(4)));
+    engine.setAntialias(antialias);
+    int size = params.getSize();
+    int[] counts = new int[size * size];
+    int[] argb = new int[size * size];
+    engine.render(params, palette, counts, argb);
+
+    File file = folder.newFile("poster.png");
+    assertTrue(Poster.render(engine, params, palette, file, TileRenderer.NO_MONITOR, 70));
+    BufferedImage image = ImageIO.read(file);
+    assertEquals(size, image.getWidth());
+    assertEquals(size, image.getHeight());
+    for (int Py = 0; Py < size; Py++) {
+      for (int Px = 0; Px < size; Px++)
+        assertEquals("pixel " + Px + ", " + Py, argb[Py * size + Px], image.getRGB(Px, Py));
+    }
+  }
+}
@@ -0,0 +1,232 @@
+package mandelbrotset.render;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.IntFunction;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class RenderEngineTest {
+
+  private static final int SIZE = 200;
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private final RenderEngine engine = new RenderEngine(new TileRenderer(new ForkJoinPool(4)));
+
+  /** Let cache files finish before the folder is deleted */
+  @After
+  public void awaitCacheWrites() throws InterruptedException {
+    if (engine.getCache() != null)
+      engine.getCache().awaitWrites();
+  }
+
+  private static RenderParams mandelbrot(int maxIter) {
+    // Across the real axis, so render() copies half the frame by symmetry
+    return new RenderParams(SIZE, -0.75, 0, 0.3, maxIter, false, 0);
+  }
+
+  private static RenderParams julia(int maxIter) {
+    return new RenderParams(SIZE, 0, 0.1, 1.2, maxIter, true, 1.1);
+  }
+
+  private static Palette palette(int maxIter) {
+    return new Palette(Palette.rgbToHsb(0xff0000), Palette.rgbToHsb(0x0000ff), false, maxIter);
+  }
+
+  /** Counts of a fresh render */
+  private int[] render(RenderParams params) {
+    int[] counts = new int[SIZE * SIZE];
+    engine.render(params, palette(params.getMaxIter()), counts, new int[SIZE * SIZE]);
+    return counts;
+  }
+
+  /** renderDeeper() from orbits, checking its counts against render() at params */
+  private OrbitBuffer assertDeeperMatches(OrbitBuffer orbits, RenderParams params) {
+    int[] counts = new int[SIZE * SIZE];
+    OrbitBuffer deeper = engine.renderDeeper(params, palette(params.getMaxIter()), counts, new int[SIZE * SIZE],
+        TileRenderer.NO_MONITOR, orbits);
+    assertNotNull(deeper);
+    assertArrayEquals("maxIter " + params.getMaxIter(), render(params), counts);
+    return deeper;
+  }
+
+  @Test
+  public void raisingAndLoweringMatchRender() {
+    assertRaiseAndLower(RenderEngineTest::mandelbrot);
+  }
+
+  @Test
+  public void raisingAndLoweringMatchRenderForJulia() {
+    assertRaiseAndLower(RenderEngineTest::julia);
+  }
+
+  private void assertRaiseAndLower(IntFunction<RenderParams> view) {
+    RenderParams start = view.apply(200);
+    OrbitBuffer orbits = OrbitBuffer.of(start, render(start), true);
+    // The first raise starts the orbits over, the second carries them on
+    OrbitBuffer deeper = assertDeeperMatches(orbits, view.apply(500));
+    OrbitBuffer deepest = assertDeeperMatches(deeper, view.apply(2000));
+    assertDeeperMatches(deepest, view.apply(50));
+    assertDeeperMatches(deepest, view.apply(2000));
+  }
+
+  /** renderDeeper() from orbits to params, true if that put the frame in the cache */
+  private boolean cachesDeeper(OrbitBuffer orbits, RenderParams params) {
+    int maxIter = params.getMaxIter();
+    assertNotNull(engine.renderDeeper(params, palette(maxIter), new int[SIZE * SIZE], new int[SIZE * SIZE],
+        TileRenderer.NO_MONITOR, orbits));
+    return engine.getCache().get(params, engine.getAlgorithm(), new int[SIZE * SIZE]);
+  }
+
+  @Test
+  public void cachesOnlyExactOrbits() throws IOException {
+    engine.setCache(new CountCache(folder.getRoot(), 1 << 24, 0));
+    RenderParams start = mandelbrot(200);
+    int[] counts = render(start);
+    assertFalse(cachesDeeper(OrbitBuffer.of(start, counts, false), mandelbrot(300)));
+    assertFalse(cachesDeeper(OrbitBuffer.of(start, counts, false), mandelbrot(100)));
+    assertTrue(cachesDeeper(OrbitBuffer.of(start, counts, true), mandelbrot(400)));
+    assertTrue(cachesDeeper(OrbitBuffer.of(start, counts, true), mandelbrot(150)));
+  }
+
+  @Test
+  public void recoloringTheSameViewKeepsOrbitsExact() throws IOException {
+    engine.setCache(new CountCache(folder.getRoot(), 1 << 24, 0));
+    RenderParams start = mandelbrot(200);
+    int[] counts = render(start);
+
+    // With anti-aliasing on the viewer recolors by reusing the frame on screen
+    engine.setAntialias(true);
+    PixelReuse same = PixelReuse.between(start, start);
+    assertTrue(same.isIdentity());
+    int[] recolored = new int[SIZE * SIZE];
+    assertTrue(engine.renderReusing(start, palette(200), recolored, new int[SIZE * SIZE], TileRenderer.NO_MONITOR,
+        same, counts));
+    assertArrayEquals(counts, recolored);
+
+    assertTrue(cachesDeeper(OrbitBuffer.of(start, recolored, same.isIdentity()), mandelbrot(400)));
+  }
+
+  @Test
+  public void panningIsNoIdentity() {
+    RenderParams start = mandelbrot(200);
+    // One pixel right
+    RenderParams panned = new RenderParams(SIZE, -0.75 + 0.6 / SIZE, 0, 0.3, 200, false, 0);
+    assertNotNull(PixelReuse.between(start, panned));
+    assertFalse(PixelReuse.between(start, panned).isIdentity());
+  }
+
+  @Test
+  public void boundaryTracingNeverCachesOrbits() throws IOException {
+    engine.setAlgorithm(RenderEngine.Algorithm.MARIANI_SILVER);
+    engine.setCache(new CountCache(folder.getRoot(), 1 << 24, 0));
+    RenderParams start = mandelbrot(200);
+    int[] counts = render(start);
+    assertFalse(cachesDeeper(OrbitBuffer.of(start, counts, true), mandelbrot(100)));
+    assertFalse(cachesDeeper(OrbitBuffer.of(start, counts, true), mandelbrot(300)));
+  }
+
+  /** Tiles the workers ran, over every frame so far */
+  private long loadTiles() {
+    WorkerLoad load = engine.getLoad();
+    long tiles = 0;
+    for (int i = 0; i < load.getWorkers() + 2; i++)
+      tiles += load.getTiles(i);
+    return tiles;
+  }
+
+  @Test
+  public void loadCountsTheTilesOfAFrameNotItsProbe() {
+    // A fresh engine probes the tile costs before the first frame
+    render(mandelbrot(200));
+    assertEquals(1, engine.getLoad().getFrames());
+    assertEquals(engine.tileCount(mandelbrot(200)), loadTiles());
+  }
+
+  @Test
+  public void loadCountsEveryPassAsOneFrame() {
+    render(mandelbrot(200));
+    engine.setAntialias(true);
+    render(julia(200));
+    int maxIter = 300;
+    assertTrue(engine.renderProgressive(julia(maxIter), palette(maxIter), new int[SIZE * SIZE], new int[SIZE * SIZE],
+        TileRenderer.NO_MONITOR, step -> {
+        }));
+    assertEquals(3, engine.getMetrics().getFrames());
+    assertEquals(3, engine.getLoad().getFrames());
+  }
+
+  /** Counts of every pixel straight from the plain kernel, nothing copied or reused */
+  private static int[] iterated(RenderParams params) {
+    int[] counts = new int[SIZE * SIZE];
+    for (int Py = 0; Py < SIZE; Py++) {
+      for (int Px = 0; Px < SIZE; Px++)
+        counts[Py * SIZE + Px] = FractalKernel.iterate(params, Px, Py);
+    }
+    return counts;
+  }
+
+  /**
+   * render() and renderProgressive() of a view symmetry copies pixels of,
+   * checked against iterating every pixel. Twice each, the second frame
+   * split by the tile costs the first one measured
+   */
+  private void assertSymmetricMatches(RenderParams params) {
+    assertNotNull("Nothing to copy", Symmetry.of(params));
+    Palette palette = palette(params.getMaxIter());
+    int[] expected = iterated(params);
+    int[] colors = new int[SIZE * SIZE];
+    palette.colorize(expected, colors, 0, colors.length);
+
+    for (RenderEngine.Kernel kernel : RenderEngine.Kernel.values()) {
+      engine.setKernel(kernel);
+      for (int i = 0; i < 2; i++) {
+        int[] counts = new int[SIZE * SIZE];
+        int[] argb = new int[SIZE * SIZE];
+        engine.render(params, palette, counts, argb);
+        assertArrayEquals(kernel + " counts", expected, counts);
+        assertArrayEquals(kernel + " colors", colors, argb);
+
+        counts = new int[SIZE * SIZE];
+        argb = new int[SIZE * SIZE];
+        assertTrue(engine.renderProgressive(params, palette, counts, argb, TileRenderer.NO_MONITOR, step -> {
+        }));
+        assertArrayEquals(kernel + " progressive counts", expected, counts);
+        assertArrayEquals(kernel + " progressive colors", colors, argb);
+      }
+    }
+  }
+
+  @Test
+  public void mandelbrotAcrossTheAxisMatchesIterating() {
+    assertSymmetricMatches(mandelbrot(200));
+  }
+
+  @Test
+  public void juliaAroundTheOriginMatchesIterating() {
+    // 0 is 10 columns and 5 rows from the center
+    assertSymmetricMatches(new RenderParams(SIZE, 0.06, -0.03, 1.2, 200, true, 1.1));
+  }
+
+  @Test
+  public void mandelbrotWithPartnerRowsOutsideMatchesIterating() {
+    // The axis is row 50, the rows past row 100 mirror rows outside the frame
+    assertSymmetricMatches(new RenderParams(SIZE, -0.75, 0.45, 0.9, 200, false, 0));
+  }
+
+  @Test
+  public void juliaWithPartnerColumnsOutsideMatchesIterating() {
+    // 0 is at pixel (150, 75), the columns up to 100 mirror columns outside the frame
+    assertSymmetricMatches(new RenderParams(SIZE, -0.6, 0.3, 1.2, 200, true, 1.1));
+  }
+}
@@ -0,0 +1,63 @@
+package mandelbrotset.render;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assume.assumeTrue;
+
+import java.util.concurrent.ForkJoinPool;
+import org.junit.Before;
+import org.junit.Test;
+
+public class VectorKernelTest {
+
+  // Two whole tiles and one of a single column, narrower than any vector
+  private static final int SIZE = 2 * TileRenderer.TILE_SIZE + 1;
+  private static final int MAX_ITER = 500;
+
+  // The DEFAULT, MOSTLY_INTERIOR and JULIA views of the benchmarks
+  private static final RenderParams[] VIEWS = {
+      new RenderParams(SIZE, -0.6, 0.0, 1.3, MAX_ITER, false, 0.0),
+      new RenderParams(SIZE, -0.5, 0.0, 0.5, MAX_ITER, false, 0.0),
+      new RenderParams(SIZE, 0.0, 0.0, 1.7, MAX_ITER, true, Math.PI) };
+
+  private final RenderEngine engine = new RenderEngine(new TileRenderer(new ForkJoinPool(4)));
+
+  @Before
+  public void needsVectorModule() {
+    // Without it VECTOR falls back to OPTIMIZED, and VectorKernel can't be loaded
+    assumeTrue("jdk.incubator.vector is not loaded", RenderEngine.isVectorAvailable());
+  }
+
+  private int[] render(RenderParams params, RenderEngine.Kernel kernel) {
+    engine.setKernel(kernel);
+    int[] counts = new int[SIZE * SIZE];
+    engine.render(params, new Palette(Palette.rgbToHsb(0xff0000), Palette.rgbToHsb(0x0000ff), false, MAX_ITER),
+        counts, new int[SIZE * SIZE]);
+    return counts;
+  }
+
+  @Test
+  public void framesMatchScalar() {
+    for (RenderParams view : VIEWS)
+      assertArrayEquals(view.getView().toString(), render(view, RenderEngine.Kernel.SCALAR),
+          render(view, RenderEngine.Kernel.VECTOR));
+  }
+
+  @Test
+  public void spansOfAnyWidthMatchScalar() {
+    int lanes = VectorKernel.lanes();
+    for (RenderParams view : VIEWS) {
+      for (int Py = 0; Py < SIZE; Py += 7) {
+        // Shorter than a vector, a vector and a tail, starting anywhere
+        for (int width = 1; width <= 2 * lanes + 1; width++) {
+          int x0 = (Py * 13 + width) % (SIZE - width);
+          int[] counts = new int[SIZE * SIZE];
+          VectorKernel.iterateRow(view, Py, x0, x0 + width, counts, new KernelStats());
+          int[] expected = new int[SIZE * SIZE];
+          for (int Px = x0; Px < x0 + width; Px++)
+            expected[Py * SIZE + Px] = FractalKernel.iterate(view, Px, Py);
+          assertArrayEquals(view.getView() + " row " + Py + " from " + x0 + " width " + width, expected, counts);
+        }
+      }
+    }
+  }
+}